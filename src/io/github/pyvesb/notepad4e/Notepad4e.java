@@ -13,6 +13,11 @@ import org.osgi.framework.BundleContext;
 
 import io.github.pyvesb.notepad4e.preferences.Preferences;
 import io.github.pyvesb.notepad4e.strings.LocalStrings;
+import io.github.pyvesb.notepad4e.utils.NoteStore;
+import io.github.pyvesb.notepad4e.utils.ResourceRegistry;
+import io.github.pyvesb.notepad4e.utils.SaveCoordinator;
+import io.github.pyvesb.notepad4e.utils.UndoHistoryBudget;
+import io.github.pyvesb.notepad4e.views.NotepadView;
 
 /**
  * Class used to control the plugin's life cycle.
@@ -25,13 +30,19 @@ public class Notepad4e extends AbstractUIPlugin {
 	// Plugin's ID.
 	public static final String PLUGIN_ID = "Notepad4e";
 
+	// File used by previous versions of the plugin to save notes in a custom location.
 	private static final String FN_DIALOG_SETTINGS_CUSTOM = "notepad4e.xml";
-	private static final String FN_DIALOG_SETTINGS = "dialog_settings.xml";
 
 	// Shared instance. Not ideal to use a static field here, but common practice to do this with AbstractUIPlugin.
 	private static Notepad4e plugin;
 
-	private IDialogSettings dialogSettings;
+	private NoteStore noteStore;
+	// Serialises the saves of all views.
+	private final SaveCoordinator saveCoordinator = new SaveCoordinator();
+	// Memory budget shared by the undo histories of all notes.
+	private UndoHistoryBudget undoHistoryBudget;
+	// Colors and fonts shared by all notes.
+	private ResourceRegistry resourceRegistry;
 
 	@Override
 	public void start(BundleContext context) throws Exception {
@@ -41,58 +52,110 @@ public class Notepad4e extends AbstractUIPlugin {
 
 	@Override
 	public void stop(BundleContext context) throws Exception {
+		// Make sure that no requested save is lost.
+		saveCoordinator.flush();
+		if (undoHistoryBudget != null) {
+			undoHistoryBudget.dispose();
+			undoHistoryBudget = null;
+		}
+		if (resourceRegistry != null) {
+			resourceRegistry.dispose();
+			resourceRegistry = null;
+		}
 		plugin = null;
 		super.stop(context);
 	}
 
-	@Override
-	public IDialogSettings getDialogSettings() {
-		if (dialogSettings == null) {
-			restoreDialogSettings();
+	/**
+	 * Returns the store in which notes are saved.
+	 * 
+	 * @return the note store corresponding to the save location preference
+	 */
+	public NoteStore getNoteStore() {
+		if (noteStore == null) {
+			restoreNoteStore();
 		}
-		return dialogSettings;
+		return noteStore;
 	}
 
-	@Override
-	public void saveDialogSettings() {
-		String directory = getDialogSettingsDirectory();
-		saveDialogSettings(directory);
+	/**
+	 * Returns the coordinator through which all saves must be made.
+	 * 
+	 * @return the save coordinator
+	 */
+	public SaveCoordinator getSaveCoordinator() {
+		return saveCoordinator;
 	}
 
-	public void saveDialogSettings(String directory) {
-		String settingsPath;
-		if (directory == null || directory.isEmpty()) {
-			settingsPath = getStateLocation().append(FN_DIALOG_SETTINGS).toOSString();
-		} else {
-			settingsPath = directory + File.separator + FN_DIALOG_SETTINGS_CUSTOM;
+	/**
+	 * Returns the memory budget shared by the undo histories of all notes.
+	 * 
+	 * @return the undo history budget
+	 */
+	public UndoHistoryBudget getUndoHistoryBudget() {
+		if (undoHistoryBudget == null) {
+			undoHistoryBudget = new UndoHistoryBudget();
 		}
-		try {
-			dialogSettings.save(settingsPath);
-		} catch (IOException | IllegalStateException e) {
-			// Ignore problems as in super.saveDialogSettings().
+		return undoHistoryBudget;
+	}
+
+	/**
+	 * Returns the registry of colors and fonts shared by all notes.
+	 * 
+	 * @return the resource registry
+	 */
+	public ResourceRegistry getResourceRegistry() {
+		if (resourceRegistry == null) {
+			resourceRegistry = new ResourceRegistry();
 		}
+		return resourceRegistry;
 	}
 
-	public void restoreDialogSettings() {
-		String directory = getDialogSettingsDirectory();
+	/**
+	 * Opens the note store corresponding to the save location preference. Notes saved by previous versions of the
+	 * plugin in a single DialogSettings file are converted if the store does not exist yet.
+	 */
+	public void restoreNoteStore() {
+		String directory = getNoteStoreDirectory();
 		if (directory == null || directory.isEmpty()) {
-			dialogSettings = super.getDialogSettings();
+			noteStore = new NoteStore(getStateLocation().toFile());
+			IDialogSettings settings = getDialogSettings();
+			IDialogSettings legacySection = settings.getSection(NotepadView.ID);
+			if (!noteStore.exists() && legacySection != null && migrateLegacySection(legacySection)) {
+				// Replace the legacy section with an empty one, so that the notes are no longer saved in the plugin's
+				// dialog settings.
+				settings.addSection(new DialogSettings(NotepadView.ID));
+			}
 		} else {
-			dialogSettings = new DialogSettings("Workbench");
-			String settingsPath = directory + File.separator + FN_DIALOG_SETTINGS_CUSTOM;
-			File settingsFile = new File(settingsPath);
-			if (settingsFile.exists()) {
+			noteStore = new NoteStore(new File(directory));
+			File legacyFile = new File(directory, FN_DIALOG_SETTINGS_CUSTOM);
+			if (!noteStore.exists() && legacyFile.exists()) {
+				DialogSettings legacySettings = new DialogSettings("Workbench");
 				try {
-					dialogSettings.load(settingsPath);
+					legacySettings.load(legacyFile.getPath());
 				} catch (IOException e) {
 					getLog().log(new Status(IStatus.ERROR, PLUGIN_ID, LocalStrings.getDialogSettingsErrorMsg, e));
-					dialogSettings = super.getDialogSettings();
+					return;
+				}
+				IDialogSettings legacySection = legacySettings.getSection(NotepadView.ID);
+				if (legacySection != null) {
+					migrateLegacySection(legacySection);
 				}
 			}
 		}
 	}
 
-	private String getDialogSettingsDirectory() {
+	private boolean migrateLegacySection(IDialogSettings legacySection) {
+		try {
+			noteStore.migrate(legacySection);
+			return true;
+		} catch (IOException | RuntimeException e) {
+			getLog().log(new Status(IStatus.ERROR, PLUGIN_ID, LocalStrings.migrationErrorMsg, e));
+			return false;
+		}
+	}
+
+	private String getNoteStoreDirectory() {
 		return InstanceScope.INSTANCE.getNode(PLUGIN_ID).get(Preferences.SAVE_LOCATION, Preferences.SAVE_LOCATION_DEFAULT);
 	}
 
@@ -37,6 +37,10 @@ public class PreferencePage extends FieldEditorPreferencePage implements IWorkbe
 		addField(new ColorFieldEditor(Preferences.BACKGROUND_COLOR, LocalStrings.prefBackgroundColor,
 				getFieldEditorParent()));
 		addField(new FontFieldEditor(Preferences.FONT, LocalStrings.prefFont, getFieldEditorParent()));
+		addField(new IntegerFieldEditor(Preferences.UNDO_MEMORY_LIMIT, LocalStrings.prefUndoMemoryLimit,
+				getFieldEditorParent()));
+		addField(new IntegerFieldEditor(Preferences.HIBERNATION_DELAY, LocalStrings.prefHibernationDelay,
+				getFieldEditorParent()));
 		addField(new IntegerFieldEditor(Preferences.SAVE_INTERVAL, LocalStrings.prefSaveInterval, getFieldEditorParent()));
 		addField(new DirectoryFieldEditor(Preferences.SAVE_LOCATION, LocalStrings.prefSaveLocation, getFieldEditorParent()));
 	}
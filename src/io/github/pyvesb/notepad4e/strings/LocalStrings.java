@@ -20,8 +20,11 @@ public class LocalStrings extends NLS {
 	public static String dialogErrorMsg;
 	public static String dialogErrorTitle;
 	public static String dialogExportTitle;
+	public static String dialogExportedAllMsg;
+	public static String dialogExportedAllTitle;
 	public static String dialogExportedMsg;
 	public static String dialogExportedTitle;
+	public static String dialogImportTitle;
 	public static String dialogOverwriteMsg;
 	public static String dialogOverwriteTitle;
 	public static String dialogRenameMsg;
@@ -32,6 +35,9 @@ public class LocalStrings extends NLS {
 	public static String iconClearNote;
 	public static String iconClearStyle;
 	public static String iconExport;
+	public static String iconExportAll;
+	public static String iconImportDirectory;
+	public static String iconImportFiles;
 	public static String iconItalic;
 	public static String iconLock;
 	public static String iconNewNote;
@@ -62,6 +68,37 @@ public class LocalStrings extends NLS {
 	public static String prefSaveInterval;
 	public static String prefSaveLocation;
 	public static String getDialogSettingsErrorMsg;
+	public static String saveErrorMsg;
+	public static String noteChecksumWarningMsg;
+	public static String noteLoadErrorMsg;
+	public static String migrationErrorMsg;
+	public static String prefUndoMemoryLimit;
+	public static String prefHibernationDelay;
+	public static String dialogQuickSwitchMsg;
+	public static String dialogQuickSwitchTitle;
+	public static String dialogSearchMsg;
+	public static String dialogSearchResult;
+	public static String dialogSearchTitle;
+	public static String iconQuickSwitch;
+	public static String iconSearch;
+	public static String searchIndexErrorMsg;
+	public static String journalReadErrorMsg;
+	public static String journalWriteErrorMsg;
+	public static String dialogExportFormat;
+	public static String dialogExportFormatText;
+	public static String dialogExportFormatHtml;
+	public static String dialogExportFormatMarkdown;
+	public static String dialogExportEncoding;
+	public static String dialogExportLineDelimiter;
+	public static String dialogExportLineDelimiterUnchanged;
+	public static String dialogExportLineDelimiterUnix;
+	public static String dialogExportLineDelimiterWindows;
+	public static String dialogExportLineDelimiterClassicMac;
+	public static String exportAllJobName;
+	public static String exportJobName;
+	public static String importJobName;
+	public static String indexJobName;
+	public static String importErrorMsg;
 
 	static {
 		// Initialise resource bundle.
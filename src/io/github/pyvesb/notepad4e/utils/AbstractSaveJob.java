@@ -0,0 +1,71 @@
+package io.github.pyvesb.notepad4e.utils;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+
+import io.github.pyvesb.notepad4e.Notepad4e;
+import io.github.pyvesb.notepad4e.strings.LocalStrings;
+
+/**
+ * Class used to write the plugin's state outside of the UI thread. All save jobs share the same scheduling rule, so
+ * that two saves never overlap.
+ * 
+ * @author Pyves
+ *
+ */
+public abstract class AbstractSaveJob extends Job {
+
+	// Rule preventing save jobs from running concurrently.
+	private static final ISchedulingRule SAVE_RULE = new ISchedulingRule() {
+
+		@Override
+		public boolean isConflicting(ISchedulingRule rule) {
+			return rule == this;
+		}
+
+		@Override
+		public boolean contains(ISchedulingRule rule) {
+			return rule == this;
+		}
+	};
+
+	/**
+	 * Constructor. Configures the job as a system job running with the shared save rule.
+	 */
+	public AbstractSaveJob() {
+		super("Notepad4e save");
+		setSystem(true);
+		setRule(SAVE_RULE);
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		try {
+			save();
+		} catch (RuntimeException e) {
+			return new Status(IStatus.ERROR, Notepad4e.PLUGIN_ID, LocalStrings.saveErrorMsg, e);
+		}
+		return Status.OK_STATUS;
+	}
+
+	/**
+	 * Saves synchronously in the calling thread, after waiting for any save job that may currently be running.
+	 */
+	public void saveNow() {
+		Job.getJobManager().beginRule(SAVE_RULE, null);
+		try {
+			save();
+		} finally {
+			Job.getJobManager().endRule(SAVE_RULE);
+		}
+	}
+
+	/**
+	 * Writes the plugin's state. Must not access any UI elements.
+	 */
+	protected abstract void save();
+
+}
@@ -0,0 +1,134 @@
+package io.github.pyvesb.notepad4e.utils;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Class deciding when to automatically save the plugin's state. A save is triggered shortly after the user stops
+ * modifying notes; during continuous editing, modifications are nevertheless saved once the oldest unsaved one reaches
+ * the maximum staleness. Nothing is scheduled while there are no unsaved modifications. Must only be used from the UI
+ * thread.
+ * 
+ * @author Pyves
+ *
+ */
+public class AutosaveScheduler {
+
+	// Delay without any modification after which the plugin's state is saved.
+	private static final long IDLE_DELAY_MILLIS = 2000L;
+
+	private final Display display;
+	private final Runnable saveAction;
+	private final Runnable timer = this::timerElapsed;
+
+	// Maximum time during which a modification can remain unsaved, negative if autosave is disabled.
+	private long maxStalenessMillis;
+	// Times of the oldest unsaved and latest modifications, in milliseconds.
+	private long firstModificationMillis;
+	private long lastModificationMillis;
+	// Indicates whether some modifications are not saved yet.
+	private boolean modified;
+	private boolean timerScheduled;
+	// Set once disposed, modifications are then ignored, for instance the ones made while the view is closing.
+	private boolean disposed;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param display display on which the timer runs
+	 * @param saveAction action saving the plugin's state, expected to call saved
+	 * @param maxStalenessMillis negative to disable autosave
+	 */
+	public AutosaveScheduler(Display display, Runnable saveAction, long maxStalenessMillis) {
+		this.display = display;
+		this.saveAction = saveAction;
+		this.maxStalenessMillis = maxStalenessMillis;
+	}
+
+	/**
+	 * Notifies the scheduler that a modification was made. Cheap enough to be called on every keystroke: the timer is
+	 * only postponed when it elapses.
+	 */
+	public void modified() {
+		if (disposed) {
+			return;
+		}
+		lastModificationMillis = now();
+		if (!modified) {
+			modified = true;
+			firstModificationMillis = lastModificationMillis;
+		}
+		if (!timerScheduled) {
+			scheduleTimer();
+		}
+	}
+
+	/**
+	 * Notifies the scheduler that all modifications were saved, whether by the save action or otherwise.
+	 */
+	public void saved() {
+		modified = false;
+		cancelTimer();
+	}
+
+	/**
+	 * Changes the maximum staleness, taking effect immediately for pending modifications.
+	 * 
+	 * @param maxStalenessMillis negative to disable autosave
+	 */
+	public void setMaxStaleness(long maxStalenessMillis) {
+		this.maxStalenessMillis = maxStalenessMillis;
+		cancelTimer();
+		if (modified && !disposed) {
+			scheduleTimer();
+		}
+	}
+
+	/**
+	 * Cancels any scheduled save. No save is scheduled afterwards.
+	 */
+	public void dispose() {
+		disposed = true;
+		cancelTimer();
+	}
+
+	private void timerElapsed() {
+		timerScheduled = false;
+		if (!modified || maxStalenessMillis < 0) {
+			return;
+		}
+		if (now() >= getDeadline()) {
+			saveAction.run();
+			modified = false;
+		} else {
+			// Modifications were made since the timer was scheduled.
+			scheduleTimer();
+		}
+	}
+
+	private void scheduleTimer() {
+		if (maxStalenessMillis < 0 || display.isDisposed()) {
+			return;
+		}
+		long delay = Math.max(0L, getDeadline() - now());
+		display.timerExec((int) Math.min(delay, Integer.MAX_VALUE), timer);
+		timerScheduled = true;
+	}
+
+	private void cancelTimer() {
+		if (timerScheduled && !display.isDisposed()) {
+			display.timerExec(-1, timer);
+		}
+		timerScheduled = false;
+	}
+
+	private long getDeadline() {
+		long idleDeadline = lastModificationMillis + Math.min(IDLE_DELAY_MILLIS, maxStalenessMillis);
+		return Math.min(idleDeadline, firstModificationMillis + maxStalenessMillis);
+	}
+
+	private static long now() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+	}
+}
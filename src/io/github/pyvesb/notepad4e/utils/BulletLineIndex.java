@@ -0,0 +1,129 @@
+package io.github.pyvesb.notepad4e.utils;
+
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
+import org.eclipse.swt.custom.StyledTextContent;
+import org.eclipse.swt.custom.TextChangeListener;
+import org.eclipse.swt.custom.TextChangedEvent;
+import org.eclipse.swt.custom.TextChangingEvent;
+
+/**
+ * Class keeping track of the lines of a note that have a bullet, so that they can be listed without asking the
+ * StyledText component for the bullet of every line, which takes time proportional to the number of bullets for each
+ * line. Bullets are recorded as a bit per line and shifted along with the lines when text changes add or remove line
+ * delimiters, one run of consecutive bulleted lines at a time.
+ * 
+ * @author Pyves
+ *
+ */
+public class BulletLineIndex implements TextChangeListener {
+
+	private final StyledTextContent content;
+	// Reads the bullet of a line from the StyledText component, used for the lines at both ends of a text change.
+	private final IntPredicate lineBulleted;
+	// Bit set for each line that has a bullet.
+	private final BitSet bulletedLines = new BitSet();
+	// First line of the pending text change, -1 if the pending change does not add or remove lines.
+	private int changeLine = -1;
+	private int replacedLineCount;
+	private int newLineCount;
+
+	/**
+	 * Constructor. The index must then be registered as a listener of the content.
+	 * 
+	 * @param content content of the note
+	 * @param lineBulleted indicates whether a line of the note has a bullet
+	 */
+	public BulletLineIndex(StyledTextContent content, IntPredicate lineBulleted) {
+		this.content = content;
+		this.lineBulleted = lineBulleted;
+	}
+
+	/**
+	 * Records that bullets were added to or removed from consecutive lines.
+	 * 
+	 * @param startLine
+	 * @param lineCount
+	 * @param bulleted
+	 */
+	public void set(int startLine, int lineCount, boolean bulleted) {
+		bulletedLines.set(startLine, startLine + lineCount, bulleted);
+	}
+
+	/**
+	 * Returns the bullet states of consecutive lines.
+	 * 
+	 * @param startLine
+	 * @param lineCount
+	 * @return array of bullet states indexed by line number, relative to the first line
+	 */
+	public boolean[] get(int startLine, int lineCount) {
+		boolean[] bullets = new boolean[lineCount];
+		for (int line = bulletedLines.nextSetBit(startLine); line >= 0
+				&& line < startLine + lineCount; line = bulletedLines.nextSetBit(line + 1)) {
+			bullets[line - startLine] = true;
+		}
+		return bullets;
+	}
+
+	/**
+	 * Counts the lines that have a bullet among consecutive lines.
+	 * 
+	 * @param startLine
+	 * @param lineCount
+	 * @return the number of bulleted lines
+	 */
+	public int count(int startLine, int lineCount) {
+		return bulletedLines.get(startLine, startLine + lineCount).cardinality();
+	}
+
+	/**
+	 * Returns the lines that have a bullet.
+	 * 
+	 * @return line numbers, in increasing order
+	 */
+	public int[] getLines() {
+		return bulletedLines.stream().toArray();
+	}
+
+	@Override
+	public void textChanging(TextChangingEvent event) {
+		// Changes within a line, for instance typing a character, leave bullets where they are.
+		if (event.replaceLineCount > 0 || event.newLineCount > 0) {
+			changeLine = content.getLineAtOffset(event.start);
+			replacedLineCount = event.replaceLineCount;
+			newLineCount = event.newLineCount;
+		}
+	}
+
+	@Override
+	public void textChanged(TextChangedEvent event) {
+		if (changeLine < 0) {
+			return;
+		}
+		// Lines after the replaced ones keep their bullets and are shifted, the inserted lines have none.
+		int oldTailStart = changeLine + replacedLineCount + 1;
+		int newTailStart = changeLine + newLineCount + 1;
+		BitSet tail = bulletedLines.get(oldTailStart, Math.max(oldTailStart, bulletedLines.length()));
+		bulletedLines.clear(changeLine + 1, Math.max(changeLine + 1, bulletedLines.length()));
+		int runStart = tail.nextSetBit(0);
+		while (runStart >= 0) {
+			int runEnd = tail.nextClearBit(runStart);
+			bulletedLines.set(newTailStart + runStart, newTailStart + runEnd);
+			runStart = tail.nextSetBit(runEnd);
+		}
+		// The first and last lines of the change are made of parts of the replaced lines.
+		bulletedLines.set(changeLine, lineBulleted.test(changeLine));
+		if (newLineCount > 0) {
+			bulletedLines.set(changeLine + newLineCount, lineBulleted.test(changeLine + newLineCount));
+		}
+		changeLine = -1;
+	}
+
+	@Override
+	public void textSet(TextChangedEvent event) {
+		// Setting the text of the StyledText component removes all bullets.
+		bulletedLines.clear();
+	}
+}
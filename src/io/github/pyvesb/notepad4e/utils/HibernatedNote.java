@@ -0,0 +1,157 @@
+package io.github.pyvesb.notepad4e.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.eclipse.swt.custom.StyleRange;
+
+/**
+ * Class holding the state of a note whose widget was disposed after being unused for a while. The text is kept as
+ * UTF-8, compressed if it is large enough for compression to pay off, and the styles and bullets in the compact
+ * encoding used by the note store, so that the note can later be recreated exactly as it was, including its caret and
+ * scroll position.
+ * 
+ * @author Pyves
+ *
+ */
+public final class HibernatedNote {
+
+	// Texts shorter than this, in bytes, are not worth compressing.
+	private static final int COMPRESSION_THRESHOLD = 4096;
+
+	// UTF-8 encoded text, possibly compressed.
+	private final byte[] text;
+	// Length of the uncompressed UTF-8 text, -1 if the text is not compressed.
+	private final int uncompressedLength;
+	// Styles and bullets, encoded by NoteCodec.
+	private final byte[] format;
+	private final long journalSequence;
+	private final int caretOffset;
+	private final int topPixel;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param snapshot contents of the note
+	 * @param caretOffset
+	 * @param topPixel vertical scroll position of the note
+	 */
+	public HibernatedNote(NoteSnapshot snapshot, int caretOffset, int topPixel) {
+		byte[] utf8Text = snapshot.getText().toString().getBytes(StandardCharsets.UTF_8);
+		byte[] compressedText = utf8Text.length >= COMPRESSION_THRESHOLD ? compress(utf8Text) : null;
+		if (compressedText != null && compressedText.length < utf8Text.length) {
+			text = compressedText;
+			uncompressedLength = utf8Text.length;
+		} else {
+			text = utf8Text;
+			uncompressedLength = -1;
+		}
+		ByteArrayOutputStream formatBytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(formatBytes)) {
+			NoteCodec.writeStyles(out, snapshot.getStyles());
+			NoteCodec.writeBullets(out, snapshot.getBulletLines());
+		} catch (IOException e) {
+			// Not thrown by in-memory streams.
+			throw new UncheckedIOException(e);
+		}
+		format = formatBytes.toByteArray();
+		journalSequence = snapshot.getJournalSequence();
+		this.caretOffset = caretOffset;
+		this.topPixel = topPixel;
+	}
+
+	/**
+	 * Decodes the text of the note.
+	 * 
+	 * @return the text
+	 */
+	public String getText() {
+		if (uncompressedLength < 0) {
+			return new String(text, StandardCharsets.UTF_8);
+		}
+		byte[] utf8Text = new byte[uncompressedLength];
+		try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(text)))) {
+			in.readFully(utf8Text);
+		} catch (IOException e) {
+			// Not thrown by in-memory streams holding data compressed by this class.
+			throw new UncheckedIOException(e);
+		}
+		return new String(utf8Text, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Decodes the styles of the note.
+	 * 
+	 * @return the style ranges
+	 */
+	public StyleRange[] getStyles() {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(format))) {
+			return NoteCodec.readStyles(in);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Decodes the bullets of the note.
+	 * 
+	 * @return line numbers, in increasing order
+	 */
+	public int[] getBulletLines() {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(format))) {
+			NoteCodec.readStyles(in);
+			return NoteCodec.readBullets(in);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Returns the sequence number of the last journal record applied to the note.
+	 * 
+	 * @return the sequence number
+	 */
+	public long getJournalSequence() {
+		return journalSequence;
+	}
+
+	public int getCaretOffset() {
+		return caretOffset;
+	}
+
+	public int getTopPixel() {
+		return topPixel;
+	}
+
+	/**
+	 * Creates a snapshot of the note, for instance to save it. Nothing is decoded until the snapshot is read, which is
+	 * typically done by the save job.
+	 * 
+	 * @param id
+	 * @return the snapshot
+	 */
+	public NoteSnapshot createSnapshot(String id) {
+		return new NoteSnapshot(id, this);
+	}
+
+	private static byte[] compress(byte[] bytes) {
+		ByteArrayOutputStream compressedBytes = new ByteArrayOutputStream(bytes.length / 2);
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try (DeflaterOutputStream out = new DeflaterOutputStream(compressedBytes, deflater)) {
+			out.write(bytes);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			deflater.end();
+		}
+		return compressedBytes.toByteArray();
+	}
+}
@@ -0,0 +1,138 @@
+package io.github.pyvesb.notepad4e.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Class converting notes to HTML documents. Each line is written as a block so that empty lines and spaces are
+ * preserved; consecutive bulleted lines are grouped in a list.
+ * 
+ * @author Pyves
+ *
+ */
+class HtmlWriter extends RichTextWriter {
+
+	private final String title;
+	private final String charsetName;
+	// Line delimiter used for the markup surrounding the text.
+	private final String markupDelimiter;
+	// Whether no text was written on the current line.
+	private boolean lineEmpty;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param title title of the document
+	 * @param charsetName name of the encoding declared in the document
+	 * @param markupDelimiter
+	 */
+	HtmlWriter(String title, String charsetName, String markupDelimiter) {
+		this.title = title;
+		this.charsetName = charsetName;
+		this.markupDelimiter = markupDelimiter;
+	}
+
+	@Override
+	protected void writeStart(Writer out) throws IOException {
+		out.write("<!DOCTYPE html>" + markupDelimiter);
+		out.write("<html>" + markupDelimiter);
+		out.write("<head>" + markupDelimiter);
+		out.write("<meta charset=\"" + charsetName + "\">" + markupDelimiter);
+		out.write("<title>");
+		writeText(out, title, 0, title.length());
+		out.write("</title>" + markupDelimiter);
+		out.write("<style>div, li { white-space: pre-wrap; }</style>" + markupDelimiter);
+		out.write("</head>" + markupDelimiter);
+		out.write("<body>" + markupDelimiter);
+	}
+
+	@Override
+	protected void writeEnd(Writer out) throws IOException {
+		out.write("</body>" + markupDelimiter);
+		out.write("</html>" + markupDelimiter);
+	}
+
+	@Override
+	protected void startLine(Writer out, boolean bulleted, boolean previousBulleted) throws IOException {
+		if (bulleted) {
+			out.write(previousBulleted ? "<li>" : "<ul>" + markupDelimiter + "<li>");
+		} else {
+			out.write("<div>");
+		}
+		lineEmpty = true;
+	}
+
+	@Override
+	protected void endLine(Writer out, boolean bulleted, boolean nextBulleted, String lineDelimiter)
+			throws IOException {
+		if (lineEmpty) {
+			// Empty blocks would otherwise collapse.
+			out.write("<br>");
+		}
+		if (bulleted) {
+			out.write(nextBulleted ? "</li>" : "</li>" + markupDelimiter + "</ul>");
+		} else {
+			out.write("</div>");
+		}
+		out.write(lineDelimiter == null ? markupDelimiter : lineDelimiter);
+	}
+
+	@Override
+	protected void openStyle(Writer out, int style) throws IOException {
+		if ((style & BOLD) != 0) {
+			out.write("<strong>");
+		}
+		if ((style & ITALIC) != 0) {
+			out.write("<em>");
+		}
+		if ((style & UNDERLINE) != 0) {
+			out.write("<u>");
+		}
+		if ((style & STRIKEOUT) != 0) {
+			out.write("<s>");
+		}
+	}
+
+	@Override
+	protected void closeStyle(Writer out, int style) throws IOException {
+		if ((style & STRIKEOUT) != 0) {
+			out.write("</s>");
+		}
+		if ((style & UNDERLINE) != 0) {
+			out.write("</u>");
+		}
+		if ((style & ITALIC) != 0) {
+			out.write("</em>");
+		}
+		if ((style & BOLD) != 0) {
+			out.write("</strong>");
+		}
+	}
+
+	@Override
+	protected void writeText(Writer out, String chunk, int start, int end) throws IOException {
+		// Start of the text not written yet.
+		int textStart = start;
+		for (int charIndex = start; charIndex < end; ++charIndex) {
+			String entity;
+			switch (chunk.charAt(charIndex)) {
+			case '&':
+				entity = "&amp;";
+				break;
+			case '<':
+				entity = "&lt;";
+				break;
+			case '>':
+				entity = "&gt;";
+				break;
+			default:
+				continue;
+			}
+			out.write(chunk, textStart, charIndex - textStart);
+			out.write(entity);
+			textStart = charIndex + 1;
+		}
+		out.write(chunk, textStart, end - textStart);
+		lineEmpty &= start == end;
+	}
+}
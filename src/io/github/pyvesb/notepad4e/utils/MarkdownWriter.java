@@ -0,0 +1,169 @@
+package io.github.pyvesb.notepad4e.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Class converting notes to Markdown documents. Characters that Markdown would interpret are escaped, lines are
+ * separated by hard line breaks and bulleted lines become list items. Emphasis markers are only written around
+ * non-whitespace characters, as Markdown ignores markers that are adjacent to whitespace on the inner side.
+ * 
+ * @author Pyves
+ *
+ */
+class MarkdownWriter extends RichTextWriter {
+
+	// Characters escaped wherever they appear.
+	private static final String SPECIAL_CHARACTERS = "\\`*_[]<>|~&";
+	// Characters escaped when they start a line, as they could otherwise start a block.
+	private static final String BLOCK_CHARACTERS = "#-+=";
+	private static final String HARD_BREAK = "  ";
+	private static final String BULLET = "- ";
+	private static final String NON_BREAKING_SPACE = "&nbsp;";
+	private static final int TAB_WIDTH = 4;
+
+	// Style of which the markers have not been written yet, as no visible character was written since it started.
+	private int pendingStyle;
+	// Style of which the opening markers have been written.
+	private int openedStyle;
+	// Whitespace written after the last visible character of the opened style, moved after its closing markers.
+	private final StringBuilder trailingWhitespace = new StringBuilder();
+	// Whether no visible character was written on the current line.
+	private boolean atLineStart;
+	// Whether only digits were written on the current line, in which case "." or ")" would start an ordered list.
+	private boolean digitsOnly;
+
+	@Override
+	protected void writeStart(Writer out) {
+		// Markdown documents have no header.
+	}
+
+	@Override
+	protected void writeEnd(Writer out) {
+		// Markdown documents have no footer.
+	}
+
+	@Override
+	protected void startLine(Writer out, boolean bulleted, boolean previousBulleted) throws IOException {
+		if (bulleted) {
+			out.write(BULLET);
+		}
+		atLineStart = true;
+		digitsOnly = false;
+	}
+
+	@Override
+	protected void endLine(Writer out, boolean bulleted, boolean nextBulleted, String lineDelimiter)
+			throws IOException {
+		if (lineDelimiter == null) {
+			return;
+		}
+		if (!bulleted && !nextBulleted && !atLineStart) {
+			out.write(HARD_BREAK);
+		}
+		out.write(lineDelimiter);
+		if (bulleted && !nextBulleted) {
+			// Without a blank line, the next line would continue the last list item.
+			out.write(lineDelimiter);
+		}
+	}
+
+	@Override
+	protected void openStyle(Writer out, int style) {
+		pendingStyle = style;
+	}
+
+	@Override
+	protected void closeStyle(Writer out, int style) throws IOException {
+		if (openedStyle != 0) {
+			writeClosingMarkers(out, openedStyle);
+			openedStyle = 0;
+		}
+		pendingStyle = 0;
+		writeTrailingWhitespace(out);
+	}
+
+	@Override
+	protected void writeText(Writer out, String chunk, int start, int end) throws IOException {
+		for (int charIndex = start; charIndex < end; ++charIndex) {
+			char character = chunk.charAt(charIndex);
+			if (character == ' ' || character == '\t') {
+				if (openedStyle != 0) {
+					trailingWhitespace.append(character);
+				} else {
+					writeEscaped(out, character);
+				}
+			} else {
+				writeTrailingWhitespace(out);
+				if (pendingStyle != 0) {
+					writeOpeningMarkers(out, pendingStyle);
+					openedStyle = pendingStyle;
+					pendingStyle = 0;
+				}
+				writeEscaped(out, character);
+			}
+		}
+	}
+
+	private void writeTrailingWhitespace(Writer out) throws IOException {
+		for (int charIndex = 0; charIndex < trailingWhitespace.length(); ++charIndex) {
+			writeEscaped(out, trailingWhitespace.charAt(charIndex));
+		}
+		trailingWhitespace.setLength(0);
+	}
+
+	/**
+	 * Writes a character, escaping it if Markdown could interpret it.
+	 * 
+	 * @param out
+	 * @param character
+	 * @throws IOException
+	 */
+	private void writeEscaped(Writer out, char character) throws IOException {
+		if (atLineStart && (character == ' ' || character == '\t')) {
+			// Leading whitespace would be dropped or turn the line into a code block.
+			int spaceCount = character == ' ' ? 1 : TAB_WIDTH;
+			for (int space = 0; space < spaceCount; ++space) {
+				out.write(NON_BREAKING_SPACE);
+			}
+			return;
+		}
+		if (SPECIAL_CHARACTERS.indexOf(character) >= 0 || atLineStart && BLOCK_CHARACTERS.indexOf(character) >= 0
+				|| digitsOnly && (character == '.' || character == ')')) {
+			out.write('\\');
+		}
+		out.write(character);
+		digitsOnly = (atLineStart || digitsOnly) && character >= '0' && character <= '9';
+		atLineStart = false;
+	}
+
+	private static void writeOpeningMarkers(Writer out, int style) throws IOException {
+		if ((style & BOLD) != 0) {
+			out.write("**");
+		}
+		if ((style & ITALIC) != 0) {
+			out.write('*');
+		}
+		if ((style & UNDERLINE) != 0) {
+			out.write("<u>");
+		}
+		if ((style & STRIKEOUT) != 0) {
+			out.write("~~");
+		}
+	}
+
+	private static void writeClosingMarkers(Writer out, int style) throws IOException {
+		if ((style & STRIKEOUT) != 0) {
+			out.write("~~");
+		}
+		if ((style & UNDERLINE) != 0) {
+			out.write("</u>");
+		}
+		if ((style & ITALIC) != 0) {
+			out.write('*');
+		}
+		if ((style & BOLD) != 0) {
+			out.write("**");
+		}
+	}
+}
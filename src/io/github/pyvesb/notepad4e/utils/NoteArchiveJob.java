@@ -0,0 +1,165 @@
+package io.github.pyvesb.notepad4e.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.osgi.util.NLS;
+
+import io.github.pyvesb.notepad4e.Notepad4e;
+import io.github.pyvesb.notepad4e.strings.LocalStrings;
+import io.github.pyvesb.notepad4e.utils.NoteStore.IndexEntry;
+import io.github.pyvesb.notepad4e.utils.NoteStore.NoteBody;
+
+/**
+ * Class used to export all the notes of a store to a ZIP archive outside of the UI thread. Each note is written as a
+ * UTF-8 text file, alongside a properties file holding its title, editable state, styles and bullets. Notes are read
+ * from the store one after the other and streamed to the archive, so that the texts of all notes are never held in
+ * memory at once and notes that were never displayed can be exported without creating their widgets.
+ * 
+ * @author Pyves
+ *
+ */
+public class NoteArchiveJob extends Job {
+
+	private static final String TEMP_EXTENSION = ".tmp";
+	private static final String TEXT_EXTENSION = ".txt";
+	private static final String METADATA_EXTENSION = ".properties";
+	// Characters that cannot be used in file names on at least one platform.
+	private static final String INVALID_NAME_CHARACTERS = "\\/:*?\"<>|";
+	private static final int MAX_NAME_LENGTH = 100;
+
+	private final NoteStore noteStore;
+	private final File file;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param noteStore store containing the notes to export
+	 * @param file archive to write
+	 */
+	public NoteArchiveJob(NoteStore noteStore, File file) {
+		super(NLS.bind(LocalStrings.exportAllJobName, file.getName()));
+		this.noteStore = noteStore;
+		this.file = file;
+		setUser(true);
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		Path target = file.toPath();
+		Path tempFile = target.resolveSibling(target.getFileName() + TEMP_EXTENSION);
+		try {
+			// Modifications that are waiting to be saved must be part of the archive.
+			Notepad4e.getDefault().getSaveCoordinator().flush();
+			List<IndexEntry> entries = noteStore.peekIndex();
+			SubMonitor subMonitor = SubMonitor.convert(monitor, getName(), entries.size());
+			try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)));
+					Writer writer = new OutputStreamWriter(zip, StandardCharsets.UTF_8)) {
+				for (int noteIndex = 0; noteIndex < entries.size(); ++noteIndex) {
+					if (subMonitor.isCanceled()) {
+						writer.close();
+						Files.deleteIfExists(tempFile);
+						return Status.CANCEL_STATUS;
+					}
+					IndexEntry entry = entries.get(noteIndex);
+					NoteBody body;
+					try {
+						body = noteStore.peekBody(entry.getId());
+					} catch (NoSuchFileException e) {
+						// Note closed since the index was read.
+						subMonitor.worked(1);
+						continue;
+					}
+					String name = getEntryName(noteIndex, entries.size(), entry.getTitle());
+					zip.putNextEntry(new ZipEntry(name + TEXT_EXTENSION));
+					writer.write(body.getText());
+					writer.flush();
+					zip.closeEntry();
+					zip.putNextEntry(new ZipEntry(name + METADATA_EXTENSION));
+					writeMetadata(writer, entry, body);
+					writer.flush();
+					zip.closeEntry();
+					subMonitor.worked(1);
+				}
+			}
+			Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			try {
+				Files.deleteIfExists(tempFile);
+			} catch (IOException deleteException) {
+				e.addSuppressed(deleteException);
+			}
+			return new Status(IStatus.ERROR, Notepad4e.PLUGIN_ID, LocalStrings.dialogErrorMsg, e);
+		}
+		return Status.OK_STATUS;
+	}
+
+	/**
+	 * Writes the title, editable state, styles and bullets of a note in the properties file format.
+	 * 
+	 * @param writer
+	 * @param entry
+	 * @param body
+	 * @throws IOException
+	 */
+	private static void writeMetadata(Writer writer, IndexEntry entry, NoteBody body) throws IOException {
+		writer.write("title=");
+		writePropertyValue(writer, entry.getTitle());
+		writer.write("\neditable=" + entry.isEditable());
+		writer.write("\nstyles=");
+		NoteCodec.writeLegacyStyles(writer, body.getStyles());
+		writer.write("\nbullets=");
+		NoteCodec.writeLegacyBullets(writer, body.getBulletLines());
+		writer.write('\n');
+	}
+
+	private static void writePropertyValue(Writer writer, String value) throws IOException {
+		for (int charIndex = 0; charIndex < value.length(); ++charIndex) {
+			char character = value.charAt(charIndex);
+			if (character == '\\' || character == '=' || character == ':' || character == '#' || character == '!'
+					|| character == ' ' && charIndex == 0) {
+				writer.write('\\');
+				writer.write(character);
+			} else if (character < ' ') {
+				writer.write(String.format("\\u%04x", (int) character));
+			} else {
+				writer.write(character);
+			}
+		}
+	}
+
+	/**
+	 * Builds the name of the files of a note in the archive. Names start with the position of the note, so that they
+	 * are listed in the same order as the tabs and remain unique even if several notes have the same title.
+	 * 
+	 * @param noteIndex
+	 * @param noteCount
+	 * @param title
+	 * @return the name, without extension
+	 */
+	private static String getEntryName(int noteIndex, int noteCount, String title) {
+		StringBuilder sanitisedTitle = new StringBuilder(Math.min(title.length(), MAX_NAME_LENGTH));
+		for (int charIndex = 0; charIndex < title.length() && charIndex < MAX_NAME_LENGTH; ++charIndex) {
+			char character = title.charAt(charIndex);
+			sanitisedTitle.append(character < ' ' || INVALID_NAME_CHARACTERS.indexOf(character) >= 0 ? '_' : character);
+		}
+		int digits = Integer.toString(noteCount).length();
+		return String.format("%0" + digits + "d %s", noteIndex + 1, sanitisedTitle.toString().trim());
+	}
+}
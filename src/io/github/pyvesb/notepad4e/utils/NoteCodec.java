@@ -0,0 +1,285 @@
+package io.github.pyvesb.notepad4e.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.StyleRange;
+
+/**
+ * Class in charge of encoding and decoding the styles and bullets of notes. Offsets are written as variable-length
+ * integers relative to the end of the previous style range or bullet run, which keeps them small; font style,
+ * underline and strikeout are packed into a single byte and consecutive bulleted lines are written as runs. Numbers are
+ * read straight from the input stream, without allocating any intermediate strings. The CSV format used by previous
+ * versions of the plugin can also be parsed.
+ * 
+ * @author Pyves
+ *
+ */
+public final class NoteCodec {
+
+	// Flags packed in the byte describing a style range.
+	private static final int FLAG_BOLD = 1;
+	private static final int FLAG_ITALIC = 1 << 1;
+	private static final int FLAG_UNDERLINE = 1 << 2;
+	private static final int FLAG_STRIKEOUT = 1 << 3;
+	// Number of integers describing a style range in the legacy CSV format.
+	private static final int LEGACY_INTEGERS_PER_STYLE = 5;
+	private static final char LEGACY_DELIMITER = ',';
+
+	private NoteCodec() {
+		// Not called.
+	}
+
+	/**
+	 * Writes style ranges, which must be ordered and must not overlap.
+	 * 
+	 * @param out
+	 * @param styles
+	 * @throws IOException
+	 */
+	public static void writeStyles(DataOutput out, StyleRange[] styles) throws IOException {
+		writeVarInt(out, styles.length);
+		int previousEnd = 0;
+		for (StyleRange style : styles) {
+			writeVarInt(out, zigZagEncode(style.start - previousEnd));
+			writeVarInt(out, style.length);
+			int flags = 0;
+			if ((style.fontStyle & SWT.BOLD) != 0) {
+				flags |= FLAG_BOLD;
+			}
+			if ((style.fontStyle & SWT.ITALIC) != 0) {
+				flags |= FLAG_ITALIC;
+			}
+			if (style.underline) {
+				flags |= FLAG_UNDERLINE;
+			}
+			if (style.strikeout) {
+				flags |= FLAG_STRIKEOUT;
+			}
+			out.writeByte(flags);
+			previousEnd = style.start + style.length;
+		}
+	}
+
+	/**
+	 * Reads style ranges written by writeStyles.
+	 * 
+	 * @param in
+	 * @return the decoded style ranges
+	 * @throws IOException
+	 */
+	public static StyleRange[] readStyles(DataInput in) throws IOException {
+		StyleRange[] styles = new StyleRange[readVarInt(in)];
+		int previousEnd = 0;
+		for (int styleIndex = 0; styleIndex < styles.length; ++styleIndex) {
+			StyleRange style = new StyleRange();
+			style.start = previousEnd + zigZagDecode(readVarInt(in));
+			style.length = readVarInt(in);
+			int flags = in.readUnsignedByte();
+			if ((flags & FLAG_BOLD) != 0) {
+				style.fontStyle |= SWT.BOLD;
+			}
+			if ((flags & FLAG_ITALIC) != 0) {
+				style.fontStyle |= SWT.ITALIC;
+			}
+			style.underline = (flags & FLAG_UNDERLINE) != 0;
+			style.strikeout = (flags & FLAG_STRIKEOUT) != 0;
+			styles[styleIndex] = style;
+			previousEnd = style.start + style.length;
+		}
+		return styles;
+	}
+
+	/**
+	 * Writes bulleted lines as runs of consecutive lines.
+	 * 
+	 * @param out
+	 * @param bulletLines line numbers, in increasing order
+	 * @throws IOException
+	 */
+	public static void writeBullets(DataOutput out, int[] bulletLines) throws IOException {
+		int runCount = 0;
+		for (int lineIndex = 0; lineIndex < bulletLines.length; ++lineIndex) {
+			if (lineIndex == 0 || bulletLines[lineIndex] != bulletLines[lineIndex - 1] + 1) {
+				++runCount;
+			}
+		}
+		writeVarInt(out, bulletLines.length);
+		writeVarInt(out, runCount);
+		int previousEnd = 0;
+		int runStart = 0;
+		for (int lineIndex = 1; lineIndex <= bulletLines.length; ++lineIndex) {
+			if (lineIndex == bulletLines.length || bulletLines[lineIndex] != bulletLines[lineIndex - 1] + 1) {
+				writeVarInt(out, bulletLines[runStart] - previousEnd);
+				writeVarInt(out, lineIndex - runStart);
+				previousEnd = bulletLines[lineIndex - 1] + 1;
+				runStart = lineIndex;
+			}
+		}
+	}
+
+	/**
+	 * Reads bulleted lines written by writeBullets.
+	 * 
+	 * @param in
+	 * @return line numbers, in increasing order
+	 * @throws IOException
+	 */
+	public static int[] readBullets(DataInput in) throws IOException {
+		int[] bulletLines = new int[readVarInt(in)];
+		int runCount = readVarInt(in);
+		int lineIndex = 0;
+		int previousEnd = 0;
+		for (int run = 0; run < runCount; ++run) {
+			int line = previousEnd + readVarInt(in);
+			int runLength = readVarInt(in);
+			if (lineIndex + runLength > bulletLines.length) {
+				throw new IOException("Inconsistent bullet runs");
+			}
+			for (int runLine = 0; runLine < runLength; ++runLine) {
+				bulletLines[lineIndex++] = line++;
+			}
+			previousEnd = line;
+		}
+		return bulletLines;
+	}
+
+	/**
+	 * Parses styles serialised by previous versions of the plugin, five comma-separated integers per style range.
+	 * 
+	 * @param serialisation
+	 * @return the parsed style ranges
+	 */
+	public static StyleRange[] parseLegacyStyles(String serialisation) {
+		int[] integers = parseLegacyIntegers(serialisation);
+		StyleRange[] styles = new StyleRange[integers.length / LEGACY_INTEGERS_PER_STYLE];
+		for (int styleIndex = 0; styleIndex < styles.length; ++styleIndex) {
+			int integerIndex = LEGACY_INTEGERS_PER_STYLE * styleIndex;
+			StyleRange style = new StyleRange();
+			style.start = integers[integerIndex];
+			style.length = integers[integerIndex + 1];
+			style.fontStyle = integers[integerIndex + 2];
+			style.underline = integers[integerIndex + 3] == 1;
+			style.strikeout = integers[integerIndex + 4] == 1;
+			styles[styleIndex] = style;
+		}
+		return styles;
+	}
+
+	/**
+	 * Parses bullets serialised by previous versions of the plugin, for instance "0,1,4".
+	 * 
+	 * @param serialisation
+	 * @return line numbers, in increasing order
+	 */
+	public static int[] parseLegacyBullets(String serialisation) {
+		int[] bulletLines = parseLegacyIntegers(serialisation);
+		Arrays.sort(bulletLines);
+		return bulletLines;
+	}
+
+	/**
+	 * Writes style ranges in the CSV format used by previous versions of the plugin, which is human readable and can
+	 * be parsed by parseLegacyStyles.
+	 * 
+	 * @param out
+	 * @param styles
+	 * @throws IOException
+	 */
+	public static void writeLegacyStyles(Writer out, StyleRange[] styles) throws IOException {
+		for (int styleIndex = 0; styleIndex < styles.length; ++styleIndex) {
+			StyleRange style = styles[styleIndex];
+			if (styleIndex > 0) {
+				out.write(LEGACY_DELIMITER);
+			}
+			out.write(style.start + "," + style.length + "," + style.fontStyle + "," + (style.underline ? 1 : 0) + ","
+					+ (style.strikeout ? 1 : 0));
+		}
+	}
+
+	/**
+	 * Writes bulleted lines in the CSV format used by previous versions of the plugin, which can be parsed by
+	 * parseLegacyBullets.
+	 * 
+	 * @param out
+	 * @param bulletLines line numbers, in increasing order
+	 * @throws IOException
+	 */
+	public static void writeLegacyBullets(Writer out, int[] bulletLines) throws IOException {
+		for (int lineIndex = 0; lineIndex < bulletLines.length; ++lineIndex) {
+			if (lineIndex > 0) {
+				out.write(LEGACY_DELIMITER);
+			}
+			out.write(Integer.toString(bulletLines[lineIndex]));
+		}
+	}
+
+	/**
+	 * Parses a string of comma-separated integers character by character; empty values are ignored.
+	 * 
+	 * @param serialisation
+	 * @return the parsed integers
+	 */
+	private static int[] parseLegacyIntegers(String serialisation) {
+		if (serialisation == null || serialisation.isEmpty()) {
+			return new int[0];
+		}
+		int[] integers = new int[serialisation.length() / 2 + 1];
+		int integerCount = 0;
+		int value = 0;
+		boolean negative = false;
+		boolean digitsRead = false;
+		for (int charIndex = 0; charIndex <= serialisation.length(); ++charIndex) {
+			char character = charIndex < serialisation.length() ? serialisation.charAt(charIndex) : LEGACY_DELIMITER;
+			if (character == LEGACY_DELIMITER) {
+				if (digitsRead) {
+					integers[integerCount++] = negative ? -value : value;
+				}
+				value = 0;
+				negative = false;
+				digitsRead = false;
+			} else if (character == '-' && !digitsRead) {
+				negative = true;
+			} else if (character >= '0' && character <= '9') {
+				value = 10 * value + (character - '0');
+				digitsRead = true;
+			} else if (!Character.isWhitespace(character)) {
+				throw new NumberFormatException("Invalid character in \"" + serialisation + "\"");
+			}
+		}
+		return Arrays.copyOf(integers, integerCount);
+	}
+
+	private static void writeVarInt(DataOutput out, int value) throws IOException {
+		// Seven bits per byte, the most significant bit indicates whether more bytes follow.
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarInt(DataInput in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+			int currentByte = in.readUnsignedByte();
+			value |= (currentByte & 0x7F) << shift;
+			if ((currentByte & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed variable-length integer");
+	}
+
+	private static int zigZagEncode(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	private static int zigZagDecode(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
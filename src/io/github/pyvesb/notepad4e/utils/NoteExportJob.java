@@ -0,0 +1,193 @@
+package io.github.pyvesb.notepad4e.utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.osgi.util.NLS;
+
+import io.github.pyvesb.notepad4e.Notepad4e;
+import io.github.pyvesb.notepad4e.strings.LocalStrings;
+
+/**
+ * Class used to export a note to a file outside of the UI thread, either as plain text or as an HTML or Markdown
+ * document preserving its styles and bullets. The text is encoded chunk by chunk, so that exporting a large note never
+ * requires a second full copy of it, and written to a temporary file which only replaces the target file once the
+ * export completes; cancelling the job therefore leaves the target untouched.
+ * 
+ * @author Pyves
+ *
+ */
+public class NoteExportJob extends Job {
+
+	// Number of characters encoded at once.
+	private static final int CHUNK_SIZE = 64 * 1024;
+	private static final String TEMP_EXTENSION = ".tmp";
+
+	private final NoteSnapshot snapshot;
+	private final File file;
+	private final ExportFormat format;
+	private final Charset charset;
+	private final LineDelimiter lineDelimiter;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param snapshot note to export
+	 * @param file
+	 * @param format
+	 * @param charset
+	 * @param lineDelimiter
+	 */
+	public NoteExportJob(NoteSnapshot snapshot, File file, ExportFormat format, Charset charset,
+			LineDelimiter lineDelimiter) {
+		super(NLS.bind(LocalStrings.exportJobName, file.getName()));
+		this.snapshot = snapshot;
+		this.file = file;
+		this.format = format;
+		this.charset = charset;
+		this.lineDelimiter = lineDelimiter;
+		setUser(true);
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		int chunkCount = (snapshot.getText().length() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		SubMonitor subMonitor = SubMonitor.convert(monitor, getName(), chunkCount);
+		Path target = file.toPath();
+		Path tempFile = target.resolveSibling(target.getFileName() + TEMP_EXTENSION);
+		try {
+			try (Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(tempFile), charset))) {
+				boolean completed;
+				if (format == ExportFormat.TEXT) {
+					completed = writePlainText(writer, subMonitor);
+				} else {
+					completed = createRichTextWriter().write(snapshot, writer, lineDelimiter.getDelimiter(),
+							subMonitor);
+				}
+				if (!completed) {
+					writer.close();
+					Files.deleteIfExists(tempFile);
+					return Status.CANCEL_STATUS;
+				}
+			}
+			Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			try {
+				Files.deleteIfExists(tempFile);
+			} catch (IOException deleteException) {
+				e.addSuppressed(deleteException);
+			}
+			return new Status(IStatus.ERROR, Notepad4e.PLUGIN_ID, LocalStrings.dialogErrorMsg, e);
+		}
+		return Status.OK_STATUS;
+	}
+
+	/**
+	 * Writes the text of the note, converting its line delimiters if needed.
+	 * 
+	 * @param writer
+	 * @param monitor used to report progress, one unit per chunk
+	 * @return false if the export was cancelled, true otherwise
+	 * @throws IOException
+	 */
+	private boolean writePlainText(Writer writer, SubMonitor monitor) throws IOException {
+		CharSequence text = snapshot.getText();
+		// Whether the last character of the previous chunk was a carriage return, which must not be followed by a
+		// second delimiter if the chunk starts with a line feed.
+		boolean afterCarriageReturn = false;
+		for (int chunkStart = 0; chunkStart < text.length(); chunkStart += CHUNK_SIZE) {
+			if (monitor.isCanceled()) {
+				return false;
+			}
+			String chunk = text.subSequence(chunkStart, Math.min(text.length(), chunkStart + CHUNK_SIZE)).toString();
+			afterCarriageReturn = writeChunk(writer, chunk, afterCarriageReturn);
+			monitor.worked(1);
+		}
+		return true;
+	}
+
+	private RichTextWriter createRichTextWriter() {
+		if (format == ExportFormat.MARKDOWN) {
+			return new MarkdownWriter();
+		}
+		String title = file.getName();
+		int extensionIndex = title.lastIndexOf('.');
+		if (extensionIndex > 0) {
+			title = title.substring(0, extensionIndex);
+		}
+		String markupDelimiter = lineDelimiter.getDelimiter() == null ? System.lineSeparator()
+				: lineDelimiter.getDelimiter();
+		return new HtmlWriter(title, charset.name(), markupDelimiter);
+	}
+
+	/**
+	 * Writes a chunk of text, converting its line delimiters if needed.
+	 * 
+	 * @param writer
+	 * @param chunk
+	 * @param afterCarriageReturn whether the previous chunk ended with a carriage return
+	 * @return whether this chunk ends with a carriage return
+	 * @throws IOException
+	 */
+	private boolean writeChunk(Writer writer, String chunk, boolean afterCarriageReturn) throws IOException {
+		if (lineDelimiter.getDelimiter() == null) {
+			writer.write(chunk);
+			return false;
+		}
+		// Start of the current line in the chunk.
+		int lineStart = 0;
+		for (int charIndex = 0; charIndex < chunk.length(); ++charIndex) {
+			char character = chunk.charAt(charIndex);
+			if (character == '\r' || character == '\n') {
+				writer.write(chunk, lineStart, charIndex - lineStart);
+				// A line feed directly following a carriage return belongs to the same delimiter.
+				if (character == '\r' || !afterCarriageReturn) {
+					writer.write(lineDelimiter.getDelimiter());
+				}
+				lineStart = charIndex + 1;
+			}
+			afterCarriageReturn = character == '\r';
+		}
+		writer.write(chunk, lineStart, chunk.length() - lineStart);
+		return afterCarriageReturn;
+	}
+
+	/**
+	 * Formats in which notes can be exported.
+	 */
+	public enum ExportFormat {
+
+		TEXT, HTML, MARKDOWN;
+	}
+
+	/**
+	 * Line delimiters that can be used in exported files.
+	 */
+	public enum LineDelimiter {
+
+		UNCHANGED(null), UNIX("\n"), WINDOWS("\r\n"), CLASSIC_MAC("\r");
+
+		// Delimiter written in place of each line delimiter of the note, null to keep the note's delimiters.
+		private final String delimiter;
+
+		private LineDelimiter(String delimiter) {
+			this.delimiter = delimiter;
+		}
+
+		public String getDelimiter() {
+			return delimiter;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package io.github.pyvesb.notepad4e.utils;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Class used to convert notes that have not been displayed for a while to their hibernated form outside of the UI
+ * thread. Encoding and compressing large texts takes time: the UI thread only takes snapshots of the notes, which share
+ * the immutable buffers of their piece tables, and swaps their widgets out once the job is done.
+ * 
+ * @author Pyves
+ *
+ */
+public class NoteHibernationJob extends Job {
+
+	private final List<IdleNote> idleNotes;
+	private final Display display;
+	private final Consumer<List<IdleNote>> hibernatedNotesConsumer;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param idleNotes notes to hibernate
+	 * @param display display in which the UI thread runs
+	 * @param hibernatedNotesConsumer called in the UI thread once all the notes have been hibernated
+	 */
+	public NoteHibernationJob(List<IdleNote> idleNotes, Display display,
+			Consumer<List<IdleNote>> hibernatedNotesConsumer) {
+		super("Notepad4e hibernation");
+		this.idleNotes = idleNotes;
+		this.display = display;
+		this.hibernatedNotesConsumer = hibernatedNotesConsumer;
+		setSystem(true);
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		for (IdleNote idleNote : idleNotes) {
+			if (monitor.isCanceled()) {
+				return Status.CANCEL_STATUS;
+			}
+			idleNote.hibernatedNote = new HibernatedNote(idleNote.snapshot, idleNote.caretOffset, idleNote.topPixel);
+		}
+		if (!display.isDisposed()) {
+			display.asyncExec(() -> hibernatedNotesConsumer.accept(idleNotes));
+		}
+		return Status.OK_STATUS;
+	}
+
+	/**
+	 * Class representing a note to hibernate, along with its hibernated state once the job has computed it.
+	 * 
+	 * @author Pyves
+	 *
+	 */
+	public static final class IdleNote {
+
+		private final NoteSnapshot snapshot;
+		private final int caretOffset;
+		private final int topPixel;
+		// Set by the job, null until then.
+		private HibernatedNote hibernatedNote;
+
+		/**
+		 * Constructor.
+		 * 
+		 * @param snapshot contents of the note
+		 * @param caretOffset
+		 * @param topPixel vertical scroll position of the note
+		 */
+		public IdleNote(NoteSnapshot snapshot, int caretOffset, int topPixel) {
+			this.snapshot = snapshot;
+			this.caretOffset = caretOffset;
+			this.topPixel = topPixel;
+		}
+
+		public NoteSnapshot getSnapshot() {
+			return snapshot;
+		}
+
+		public HibernatedNote getHibernatedNote() {
+			return hibernatedNote;
+		}
+	}
+}
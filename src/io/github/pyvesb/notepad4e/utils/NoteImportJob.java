@@ -0,0 +1,308 @@
+package io.github.pyvesb.notepad4e.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.osgi.util.NLS;
+import org.eclipse.swt.custom.StyleRange;
+import org.eclipse.swt.widgets.Display;
+
+import io.github.pyvesb.notepad4e.Notepad4e;
+import io.github.pyvesb.notepad4e.strings.LocalStrings;
+
+/**
+ * Class used to import files into notes. Files are read and decoded in parallel by a pool of worker threads, whereas
+ * the decoded files are handed over to the UI thread in batches, so that importing many files never blocks the
+ * workbench. Only a few files are decoded ahead of the UI thread, which bounds the memory used by large imports. The
+ * imported notes are recorded in the journal and converted to their hibernated form by the job, the UI thread then only
+ * has to add a tab for each of them.
+ * 
+ * @author Pyves
+ *
+ */
+public class NoteImportJob extends Job {
+
+	// Number of decoded files handed over to the UI thread at once.
+	private static final int BATCH_SIZE = 25;
+	// Files larger than this are memory-mapped rather than copied to the heap before being decoded.
+	private static final long MAPPING_THRESHOLD = 1024L * 1024L;
+	// Number of bytes checked when determining whether a file is binary.
+	private static final int BINARY_DETECTION_LENGTH = 8192;
+
+	private final List<File> files;
+	private final Display display;
+	private final NoteJournal journal;
+	private final Predicate<List<ImportedFile>> batchConsumer;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param files files to import; the files contained in directories are imported recursively
+	 * @param display display in which the UI thread runs
+	 * @param journal journal in which the imported notes are recorded until they are saved
+	 * @param batchConsumer called in the UI thread with each batch of decoded files, returns false if the view was closed
+	 */
+	public NoteImportJob(List<File> files, Display display, NoteJournal journal,
+			Predicate<List<ImportedFile>> batchConsumer) {
+		super(LocalStrings.importJobName);
+		this.files = files;
+		this.display = display;
+		this.journal = journal;
+		this.batchConsumer = batchConsumer;
+		setUser(true);
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		List<Path> paths = collectPaths();
+		SubMonitor subMonitor = SubMonitor.convert(monitor, getName(), paths.size());
+		int threadCount = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), paths.size()));
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+		try {
+			// Files being decoded, in order; the window is limited so that decoded texts do not pile up in memory.
+			Deque<Future<ImportedFile>> pendingFiles = new ArrayDeque<>();
+			List<ImportedFile> batch = new ArrayList<>(BATCH_SIZE);
+			int nextPathIndex = 0;
+			while (nextPathIndex < paths.size() || !pendingFiles.isEmpty()) {
+				while (nextPathIndex < paths.size() && pendingFiles.size() < 2 * threadCount) {
+					Path path = paths.get(nextPathIndex++);
+					pendingFiles.add(executor.submit(() -> decode(path)));
+				}
+				if (subMonitor.isCanceled()) {
+					return Status.CANCEL_STATUS;
+				}
+				ImportedFile importedFile = getImportedFile(pendingFiles.poll());
+				if (importedFile != null) {
+					// Journaled in order, so that recovered notes are added back in the same order.
+					journal.noteCreated(importedFile.getId(), importedFile.getName());
+					if (importedFile.text != null) {
+						journal.textSet(importedFile.getId(), importedFile.getHibernatedNote().getJournalSequence(),
+								importedFile.text);
+						// The hibernated note holds a compact copy of the text.
+						importedFile.text = null;
+					}
+					batch.add(importedFile);
+				}
+				subMonitor.worked(1);
+				if (batch.size() == BATCH_SIZE) {
+					if (!handOver(batch)) {
+						return Status.CANCEL_STATUS;
+					}
+					batch = new ArrayList<>(BATCH_SIZE);
+				}
+			}
+			if (!batch.isEmpty() && !handOver(batch)) {
+				return Status.CANCEL_STATUS;
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return Status.OK_STATUS;
+	}
+
+	/**
+	 * Lists the files to import, walking directories recursively.
+	 * 
+	 * @return paths of the regular files to import, in order
+	 */
+	private List<Path> collectPaths() {
+		List<Path> paths = new ArrayList<>();
+		for (File file : files) {
+			if (file.isDirectory()) {
+				try (Stream<Path> directoryPaths = Files.walk(file.toPath())) {
+					paths.addAll(directoryPaths.filter(Files::isRegularFile).sorted().collect(Collectors.toList()));
+				} catch (IOException | RuntimeException e) {
+					logImportError(file.toPath(), e);
+				}
+			} else {
+				paths.add(file.toPath());
+			}
+		}
+		return paths;
+	}
+
+	/**
+	 * Waits for a file to be decoded.
+	 * 
+	 * @param future
+	 * @return the decoded file, or null if it could not be read or is not a text file
+	 */
+	private ImportedFile getImportedFile(Future<ImportedFile> future) {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			// The path was logged by the worker thread.
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	/**
+	 * Passes a batch of decoded files to the consumer, waiting until the UI thread has processed it.
+	 * 
+	 * @param batch
+	 * @return false if the display was disposed or the consumer rejected the batch, true otherwise
+	 */
+	private boolean handOver(List<ImportedFile> batch) {
+		if (display.isDisposed()) {
+			return false;
+		}
+		boolean[] accepted = new boolean[1];
+		display.syncExec(() -> accepted[0] = batchConsumer.test(batch));
+		return accepted[0];
+	}
+
+	/**
+	 * Reads and decodes a file. Files with a byte order mark are decoded with the corresponding Unicode charset; other
+	 * files are decoded as UTF-8 if they are valid UTF-8, and with the platform's default charset otherwise.
+	 * 
+	 * @param path
+	 * @return the decoded file, or null if it is a binary file
+	 * @throws IOException
+	 */
+	private static ImportedFile decode(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("File too large: " + size + " bytes");
+			}
+			ByteBuffer bytes;
+			if (size >= MAPPING_THRESHOLD) {
+				bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			} else {
+				bytes = ByteBuffer.allocate((int) size);
+				while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+					// Keep reading until the buffer is full.
+				}
+				bytes.flip();
+			}
+			Charset charset = detectByteOrderMark(bytes);
+			if (charset == null && isBinary(bytes)) {
+				return null;
+			}
+			String text;
+			if (charset != null) {
+				text = charset.decode(bytes).toString();
+			} else {
+				try {
+					text = StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+							.onUnmappableCharacter(CodingErrorAction.REPORT).decode(bytes).toString();
+				} catch (CharacterCodingException e) {
+					bytes.rewind();
+					text = Charset.defaultCharset().decode(bytes).toString();
+				}
+			}
+			return new ImportedFile(NoteStore.createNoteId(), path.getFileName().toString(), text);
+		} catch (IOException | RuntimeException e) {
+			logImportError(path, e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Detects a Unicode byte order mark and skips it.
+	 * 
+	 * @param bytes
+	 * @return the charset indicated by the byte order mark, or null if there is none
+	 */
+	private static Charset detectByteOrderMark(ByteBuffer bytes) {
+		if (bytes.remaining() >= 3 && (bytes.get(0) & 0xFF) == 0xEF && (bytes.get(1) & 0xFF) == 0xBB
+				&& (bytes.get(2) & 0xFF) == 0xBF) {
+			bytes.position(3);
+			return StandardCharsets.UTF_8;
+		} else if (bytes.remaining() >= 2 && (bytes.get(0) & 0xFF) == 0xFE && (bytes.get(1) & 0xFF) == 0xFF) {
+			bytes.position(2);
+			return StandardCharsets.UTF_16BE;
+		} else if (bytes.remaining() >= 2 && (bytes.get(0) & 0xFF) == 0xFF && (bytes.get(1) & 0xFF) == 0xFE) {
+			bytes.position(2);
+			return StandardCharsets.UTF_16LE;
+		}
+		return null;
+	}
+
+	/**
+	 * Determines whether a file is binary by looking for null bytes at its start, which text files never contain in
+	 * the single-byte or UTF-8 encodings.
+	 * 
+	 * @param bytes
+	 * @return true if the file is binary, false otherwise
+	 */
+	private static boolean isBinary(ByteBuffer bytes) {
+		int end = Math.min(bytes.limit(), bytes.position() + BINARY_DETECTION_LENGTH);
+		for (int byteIndex = bytes.position(); byteIndex < end; ++byteIndex) {
+			if (bytes.get(byteIndex) == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void logImportError(Path path, Exception e) {
+		Notepad4e.getDefault().getLog().log(new Status(IStatus.ERROR, Notepad4e.PLUGIN_ID,
+				NLS.bind(LocalStrings.importErrorMsg, path), e));
+	}
+
+	/**
+	 * Class containing the note created for an imported file, in the hibernated form used for notes without widget.
+	 * 
+	 * @author Pyves
+	 *
+	 */
+	public static final class ImportedFile {
+
+		private final String id;
+		private final String name;
+		private final HibernatedNote hibernatedNote;
+		// Decoded text until it is recorded in the journal, null afterwards or if the file is empty.
+		private String text;
+
+		ImportedFile(String id, String name, String text) {
+			this.id = id;
+			this.name = name;
+			// The text of a new note is its first journal record.
+			long journalSequence = text.isEmpty() ? 0L : 1L;
+			hibernatedNote = new HibernatedNote(new NoteSnapshot(id, text, new StyleRange[0], new int[0],
+					journalSequence), 0, 0);
+			this.text = text.isEmpty() ? null : text;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public HibernatedNote getHibernatedNote() {
+			return hibernatedNote;
+		}
+	}
+}
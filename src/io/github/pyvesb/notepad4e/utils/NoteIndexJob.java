@@ -0,0 +1,99 @@
+package io.github.pyvesb.notepad4e.utils;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.swt.widgets.Display;
+
+import io.github.pyvesb.notepad4e.Notepad4e;
+import io.github.pyvesb.notepad4e.strings.LocalStrings;
+import io.github.pyvesb.notepad4e.utils.SearchIndex.NoteTokens;
+
+/**
+ * Class used to add the notes missing from the search index, typically notes that were never displayed and whose
+ * saved index entry is missing or out of date. Notes are read and tokenised outside of the UI thread, their words are
+ * then handed over to the UI thread in batches, so that search results can be refreshed as notes get indexed.
+ * 
+ * @author Pyves
+ *
+ */
+public class NoteIndexJob extends Job {
+
+	// Number of tokenised notes handed over to the UI thread at once.
+	private static final int BATCH_SIZE = 25;
+
+	private final Map<String, HibernatedNote> notes;
+	private final NoteStore noteStore;
+	private final Display display;
+	private final Predicate<Map<String, NoteTokens>> batchConsumer;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param notes notes to index, mapped to their hibernated state or to null if they must be read from the store
+	 * @param noteStore store containing the notes
+	 * @param display display in which the UI thread runs
+	 * @param batchConsumer called in the UI thread with each batch of tokenised notes, returns false if the view closed
+	 */
+	public NoteIndexJob(Map<String, HibernatedNote> notes, NoteStore noteStore, Display display,
+			Predicate<Map<String, NoteTokens>> batchConsumer) {
+		super(LocalStrings.indexJobName);
+		this.notes = notes;
+		this.noteStore = noteStore;
+		this.display = display;
+		this.batchConsumer = batchConsumer;
+	}
+
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		SubMonitor subMonitor = SubMonitor.convert(monitor, getName(), notes.size());
+		Map<String, NoteTokens> batch = new HashMap<>();
+		for (Map.Entry<String, HibernatedNote> note : notes.entrySet()) {
+			if (subMonitor.isCanceled()) {
+				return Status.CANCEL_STATUS;
+			}
+			try {
+				// Peeking leaves the checksums known to the store untouched, the save job may be running.
+				String text = note.getValue() != null ? note.getValue().getText()
+						: noteStore.peekBody(note.getKey()).getText();
+				batch.put(note.getKey(), SearchIndex.tokenize(text));
+			} catch (IOException | RuntimeException e) {
+				Notepad4e.getDefault().getLog()
+						.log(new Status(IStatus.ERROR, Notepad4e.PLUGIN_ID, LocalStrings.noteLoadErrorMsg, e));
+			}
+			subMonitor.worked(1);
+			if (batch.size() == BATCH_SIZE) {
+				if (!handOver(batch)) {
+					return Status.CANCEL_STATUS;
+				}
+				batch = new HashMap<>();
+			}
+		}
+		if (!batch.isEmpty() && !handOver(batch)) {
+			return Status.CANCEL_STATUS;
+		}
+		return Status.OK_STATUS;
+	}
+
+	/**
+	 * Passes a batch of tokenised notes to the consumer, waiting until the UI thread has processed it.
+	 * 
+	 * @param batch
+	 * @return false if the display was disposed or the consumer rejected the batch, true otherwise
+	 */
+	private boolean handOver(Map<String, NoteTokens> batch) {
+		if (display.isDisposed()) {
+			return false;
+		}
+		boolean[] accepted = new boolean[1];
+		display.syncExec(() -> accepted[0] = batchConsumer.test(batch));
+		return accepted[0];
+	}
+}
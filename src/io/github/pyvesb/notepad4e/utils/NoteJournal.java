@@ -0,0 +1,447 @@
+package io.github.pyvesb.notepad4e.utils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.swt.custom.StyleRange;
+
+import io.github.pyvesb.notepad4e.Notepad4e;
+import io.github.pyvesb.notepad4e.strings.LocalStrings;
+
+/**
+ * Class recording the modifications made to notes in an append-only journal, so that modifications made since the last
+ * save can be recovered if Eclipse terminates abruptly. Each record is appended with a single write call and carries
+ * a per-note sequence number; records whose sequence number is not greater than the one of the saved body of their
+ * note are already part of that body and are ignored on replay.
+ * 
+ * The journal is split in segments: a save rotates the journal, and the segments written before the rotation are
+ * deleted once the save has succeeded.
+ * 
+ * @author Pyves
+ *
+ */
+public class NoteJournal {
+
+	private static final String FN_SEGMENT_PREFIX = "notepad4e-journal-";
+	private static final String SEGMENT_EXTENSION = ".log";
+
+	private final File directory;
+	// Number of the segment to which records are appended.
+	private int currentSegment = 1;
+	// Stream of the current segment, opened when the first record is appended to it.
+	private OutputStream out;
+	// Set when a save fails: segments must then be kept until the notes are saved again after a restart.
+	private boolean compactionDisabled;
+	// Set when a record could not be written, in which case journaling stops and the error is only logged once.
+	private boolean failed;
+
+	/**
+	 * Constructor. The journal's segments are stored in the given directory.
+	 * 
+	 * @param directory
+	 */
+	NoteJournal(File directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Records the replacement of a range of text in a note.
+	 * 
+	 * @param id
+	 * @param sequence
+	 * @param offset
+	 * @param removedLength
+	 * @param text inserted text
+	 */
+	public void textReplaced(String id, long sequence, int offset, int removedLength, String text) {
+		append(Type.REPLACE, id, sequence, out -> {
+			out.writeInt(offset);
+			out.writeInt(removedLength);
+			writeString(out, text);
+		});
+	}
+
+	/**
+	 * Records the replacement of the whole text of a note.
+	 * 
+	 * @param id
+	 * @param sequence
+	 * @param text
+	 */
+	public void textSet(String id, long sequence, String text) {
+		append(Type.SET_TEXT, id, sequence, out -> writeString(out, text));
+	}
+
+	/**
+	 * Records the styles and bullets of a region of a note after they were changed. Only the region is recorded, the
+	 * size of the record therefore does not depend on the formatting of the rest of the note.
+	 * 
+	 * @param id
+	 * @param sequence
+	 * @param offset
+	 * @param length
+	 * @param styles styles of the region, null if they were not changed
+	 * @param firstLine first line of the region
+	 * @param bullets bullet states of the lines of the region, relative to the first line
+	 */
+	public void formatChanged(String id, long sequence, int offset, int length, StyleRange[] styles, int firstLine,
+			boolean[] bullets) {
+		append(Type.FORMAT, id, sequence, out -> {
+			out.writeInt(offset);
+			out.writeInt(length);
+			out.writeBoolean(styles != null);
+			if (styles != null) {
+				NoteCodec.writeStyles(out, styles);
+			}
+			out.writeInt(firstLine);
+			out.writeInt(bullets.length);
+			for (boolean bullet : bullets) {
+				out.writeBoolean(bullet);
+			}
+		});
+	}
+
+	/**
+	 * Records a change of the editable state of a note.
+	 * 
+	 * @param id
+	 * @param sequence
+	 * @param editable
+	 */
+	public void editableChanged(String id, long sequence, boolean editable) {
+		append(Type.EDITABLE, id, sequence, out -> out.writeBoolean(editable));
+	}
+
+	/**
+	 * Records the creation of a note, which is not part of the store's index until the next save.
+	 * 
+	 * @param id
+	 * @param title
+	 */
+	public void noteCreated(String id, String title) {
+		append(Type.CREATE, id, 0L, out -> writeString(out, title));
+	}
+
+	/**
+	 * Starts a new segment. Must be called when the state of the notes is captured for a save.
+	 * 
+	 * @return the number of the last segment whose records are covered by the save
+	 */
+	public synchronized int rotate() {
+		closeSegment();
+		return currentSegment++;
+	}
+
+	/**
+	 * Deletes the segments covered by a successful save.
+	 * 
+	 * @param lastSegment number returned by rotate when the save was requested
+	 */
+	public synchronized void compact(int lastSegment) {
+		if (compactionDisabled) {
+			return;
+		}
+		for (int segment : listSegments().keySet()) {
+			if (segment <= lastSegment) {
+				try {
+					Files.deleteIfExists(getSegmentFile(segment).toPath());
+				} catch (IOException e) {
+					Notepad4e.getDefault().getLog()
+							.log(new Status(IStatus.WARNING, Notepad4e.PLUGIN_ID, LocalStrings.journalWriteErrorMsg, e));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Keeps all segments from now on, as a save failed and the records may be the only copy of some modifications.
+	 */
+	public synchronized void disableCompaction() {
+		compactionDisabled = true;
+	}
+
+	/**
+	 * Reads the records of all segments, in the order in which they were appended. Reading a segment stops at the first
+	 * incomplete or corrupted record, typically the one that was being written when Eclipse terminated. New records are
+	 * subsequently appended to a new segment.
+	 * 
+	 * @return the journal's records
+	 */
+	public synchronized List<Record> readRecords() {
+		List<Record> records = new ArrayList<>();
+		TreeMap<Integer, File> segments = listSegments();
+		for (File segmentFile : segments.values()) {
+			try (DataInputStream in = new DataInputStream(
+					new BufferedInputStream(Files.newInputStream(segmentFile.toPath())))) {
+				Record record;
+				while ((record = readRecord(in)) != null) {
+					records.add(record);
+				}
+			} catch (IOException e) {
+				Notepad4e.getDefault().getLog()
+						.log(new Status(IStatus.WARNING, Notepad4e.PLUGIN_ID, LocalStrings.journalReadErrorMsg, e));
+			}
+		}
+		if (!segments.isEmpty()) {
+			closeSegment();
+			currentSegment = Math.max(currentSegment, segments.lastKey() + 1);
+		}
+		return records;
+	}
+
+	/**
+	 * Closes the current segment.
+	 */
+	public synchronized void close() {
+		closeSegment();
+	}
+
+	private synchronized void append(Type type, String id, long sequence, RecordWriter payloadWriter) {
+		if (failed) {
+			return;
+		}
+		try {
+			ByteArrayOutputStream payload = new ByteArrayOutputStream();
+			try (DataOutputStream payloadOut = new DataOutputStream(payload)) {
+				payloadOut.writeByte(type.ordinal());
+				payloadOut.writeUTF(id);
+				payloadOut.writeLong(sequence);
+				payloadWriter.write(payloadOut);
+			}
+			byte[] payloadBytes = payload.toByteArray();
+			ByteArrayOutputStream record = new ByteArrayOutputStream(payloadBytes.length + 2 * Integer.BYTES);
+			try (DataOutputStream recordOut = new DataOutputStream(record)) {
+				recordOut.writeInt(payloadBytes.length);
+				recordOut.write(payloadBytes);
+				recordOut.writeInt((int) computeChecksum(payloadBytes));
+			}
+			if (out == null) {
+				Files.createDirectories(directory.toPath());
+				out = new FileOutputStream(getSegmentFile(currentSegment), true);
+			}
+			// A single unbuffered write per record, handed straight to the operating system.
+			record.writeTo(out);
+		} catch (IOException e) {
+			failed = true;
+			Notepad4e.getDefault().getLog()
+					.log(new Status(IStatus.ERROR, Notepad4e.PLUGIN_ID, LocalStrings.journalWriteErrorMsg, e));
+		}
+	}
+
+	private void closeSegment() {
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				Notepad4e.getDefault().getLog()
+						.log(new Status(IStatus.WARNING, Notepad4e.PLUGIN_ID, LocalStrings.journalWriteErrorMsg, e));
+			}
+			out = null;
+		}
+	}
+
+	/**
+	 * Reads the next record of a segment.
+	 * 
+	 * @param in
+	 * @return the record, or null if the end of the segment or an invalid record was reached
+	 * @throws IOException
+	 */
+	private static Record readRecord(DataInputStream in) throws IOException {
+		byte[] payload;
+		try {
+			int length = in.readInt();
+			if (length <= 0 || length > in.available()) {
+				return null;
+			}
+			payload = new byte[length];
+			in.readFully(payload);
+			if (in.readInt() != (int) computeChecksum(payload)) {
+				return null;
+			}
+		} catch (EOFException e) {
+			return null;
+		}
+		try (DataInputStream payloadIn = new DataInputStream(new ByteArrayInputStream(payload))) {
+			int typeIndex = payloadIn.readUnsignedByte();
+			if (typeIndex >= Type.values().length) {
+				return null;
+			}
+			Record record = new Record(Type.values()[typeIndex], payloadIn.readUTF(), payloadIn.readLong());
+			switch (record.type) {
+				case REPLACE:
+					record.offset = payloadIn.readInt();
+					record.removedLength = payloadIn.readInt();
+					record.text = readString(payloadIn);
+					break;
+				case SET_TEXT:
+				case CREATE:
+					record.text = readString(payloadIn);
+					break;
+				case FORMAT:
+					record.offset = payloadIn.readInt();
+					record.length = payloadIn.readInt();
+					if (payloadIn.readBoolean()) {
+						record.styles = NoteCodec.readStyles(payloadIn);
+					}
+					record.firstLine = payloadIn.readInt();
+					record.bullets = new boolean[payloadIn.readInt()];
+					for (int line = 0; line < record.bullets.length; ++line) {
+						record.bullets[line] = payloadIn.readBoolean();
+					}
+					break;
+				case EDITABLE:
+					record.editable = payloadIn.readBoolean();
+					break;
+			}
+			return record;
+		}
+	}
+
+	private TreeMap<Integer, File> listSegments() {
+		TreeMap<Integer, File> segments = new TreeMap<>();
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				String name = file.getName();
+				if (name.startsWith(FN_SEGMENT_PREFIX) && name.endsWith(SEGMENT_EXTENSION)) {
+					try {
+						segments.put(Integer.parseInt(name.substring(FN_SEGMENT_PREFIX.length(),
+								name.length() - SEGMENT_EXTENSION.length())), file);
+					} catch (NumberFormatException e) {
+						// Not a segment of the journal.
+					}
+				}
+			}
+		}
+		return segments;
+	}
+
+	private File getSegmentFile(int segment) {
+		return new File(directory, FN_SEGMENT_PREFIX + segment + SEGMENT_EXTENSION);
+	}
+
+	private static void writeString(DataOutputStream out, String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static long computeChecksum(byte[] bytes) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		return crc.getValue();
+	}
+
+	/**
+	 * Writes the type-specific part of a record.
+	 */
+	@FunctionalInterface
+	private interface RecordWriter {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	/**
+	 * Kinds of modifications recorded in the journal.
+	 */
+	public enum Type {
+		REPLACE, SET_TEXT, FORMAT, EDITABLE, CREATE
+	}
+
+	/**
+	 * Class representing a modification read from the journal. Only the fields corresponding to its type are set.
+	 * 
+	 * @author Pyves
+	 *
+	 */
+	public static final class Record {
+
+		private final Type type;
+		private final String id;
+		private final long sequence;
+		private int offset;
+		private int removedLength;
+		// Length of a formatted region.
+		private int length;
+		// Inserted text, whole text of the note, or title of a created note.
+		private String text;
+		// Styles of a formatted region, null if they were not changed.
+		private StyleRange[] styles;
+		private int firstLine;
+		// Bullet states of the lines of a formatted region, relative to its first line.
+		private boolean[] bullets;
+		private boolean editable;
+
+		private Record(Type type, String id, long sequence) {
+			this.type = type;
+			this.id = id;
+			this.sequence = sequence;
+		}
+
+		public Type getType() {
+			return type;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public long getSequence() {
+			return sequence;
+		}
+
+		public int getOffset() {
+			return offset;
+		}
+
+		public int getRemovedLength() {
+			return removedLength;
+		}
+
+		public int getLength() {
+			return length;
+		}
+
+		public String getText() {
+			return text;
+		}
+
+		public StyleRange[] getStyles() {
+			return styles;
+		}
+
+		public int getFirstLine() {
+			return firstLine;
+		}
+
+		public boolean[] getBullets() {
+			return bullets;
+		}
+
+		public boolean isEditable() {
+			return editable;
+		}
+	}
+}
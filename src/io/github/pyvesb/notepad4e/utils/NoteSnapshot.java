@@ -0,0 +1,90 @@
+package io.github.pyvesb.notepad4e.utils;
+
+import org.eclipse.swt.custom.StyleRange;
+
+/**
+ * Class representing an immutable copy of the state of a note. Snapshots are cheap to take on the UI thread and can
+ * then be serialised on any other thread. Snapshots of hibernated notes only refer to the hibernated state, which is
+ * decoded when the snapshot is read rather than when it is taken.
+ * 
+ * @author Pyves
+ *
+ */
+public final class NoteSnapshot {
+
+	private final String id;
+	private final CharSequence text;
+	private final StyleRange[] styles;
+	private final int[] bulletLines;
+	private final long journalSequence;
+	// Hibernated state from which the contents are decoded, null if they were provided.
+	private final HibernatedNote hibernatedNote;
+
+	/**
+	 * Constructor. The provided arrays must no longer be modified by the caller.
+	 * 
+	 * @param id
+	 * @param text
+	 * @param styles
+	 * @param bulletLines
+	 * @param journalSequence sequence number of the last journal record of the note
+	 */
+	public NoteSnapshot(String id, CharSequence text, StyleRange[] styles, int[] bulletLines, long journalSequence) {
+		this.id = id;
+		this.text = text;
+		this.styles = styles;
+		this.bulletLines = bulletLines;
+		this.journalSequence = journalSequence;
+		hibernatedNote = null;
+	}
+
+	/**
+	 * Constructor for a hibernated note, which is immutable and only decoded when the snapshot is read.
+	 * 
+	 * @param id
+	 * @param hibernatedNote
+	 */
+	NoteSnapshot(String id, HibernatedNote hibernatedNote) {
+		this.id = id;
+		text = null;
+		styles = null;
+		bulletLines = null;
+		journalSequence = hibernatedNote.getJournalSequence();
+		this.hibernatedNote = hibernatedNote;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the text of the note. The sequence is immutable and can be read on any thread.
+	 * 
+	 * @return the text
+	 */
+	public CharSequence getText() {
+		return hibernatedNote != null ? hibernatedNote.getText() : text;
+	}
+
+	/**
+	 * Returns the styles of the note. The returned array must not be modified.
+	 * 
+	 * @return style ranges, in order
+	 */
+	public StyleRange[] getStyles() {
+		return hibernatedNote != null ? hibernatedNote.getStyles() : styles;
+	}
+
+	/**
+	 * Returns the lines of the note that have a bullet. The returned array must not be modified.
+	 * 
+	 * @return line numbers, in increasing order
+	 */
+	public int[] getBulletLines() {
+		return hibernatedNote != null ? hibernatedNote.getBulletLines() : bulletLines;
+	}
+
+	public long getJournalSequence() {
+		return journalSequence;
+	}
+}
@@ -0,0 +1,486 @@
+package io.github.pyvesb.notepad4e.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.jface.dialogs.DialogSettings;
+import org.eclipse.jface.dialogs.IDialogSettings;
+import org.eclipse.swt.custom.StyleRange;
+
+import io.github.pyvesb.notepad4e.Notepad4e;
+import io.github.pyvesb.notepad4e.strings.LocalStrings;
+
+/**
+ * Class in charge of persisting notes. A small index file lists the notes in order with their titles, editable states
+ * and checksums, whereas the contents of each note are stored in a separate body file. Saving and loading therefore
+ * only touch the notes that were modified or that are requested.
+ * 
+ * @author Pyves
+ *
+ */
+public class NoteStore {
+
+	private static final String FN_INDEX = "notepad4e-index.xml";
+	private static final String FN_NOTES_DIRECTORY = "notepad4e-notes";
+	private static final String FN_SEARCH_INDEX = "notepad4e-search.idx";
+	private static final String BODY_EXTENSION = ".note";
+	private static final String TEMP_EXTENSION = ".tmp";
+	private static final int BODY_VERSION = 3;
+	// Body version without journal sequence number.
+	private static final int UNSEQUENCED_BODY_VERSION = 2;
+	// Body version storing styles and bullets as CSV strings.
+	private static final int CSV_BODY_VERSION = 1;
+	private static final int INDEX_VERSION = 1;
+	// Keys used in the index file.
+	private static final String INDEX_SECTION = "Notepad4e";
+	private static final String INDEX_VERSION_KEY = "Version";
+	private static final String INDEX_COUNT_KEY = "NumOfNotes";
+	private static final String INDEX_ID_KEY = "Id";
+	private static final String INDEX_TITLE_KEY = "Title";
+	private static final String INDEX_EDITABLE_KEY = "Editable";
+	private static final String INDEX_CHECKSUM_KEY = "Checksum";
+	// Keys used by previous versions of the plugin to store all notes in a single DialogSettings section.
+	private static final String LEGACY_COUNT_KEY = "NumOfTabs";
+	private static final String LEGACY_TEXT_PREFIX_KEY = "TabText";
+	private static final String LEGACY_STYLE_PREFIX_KEY = "TabStyle";
+	private static final String LEGACY_TITLE_PREFIX_KEY = "TabTitle";
+	private static final String LEGACY_EDITABLE_PREFIX_KEY = "TabEditable";
+	private static final String LEGACY_BULLETS_PREFIX_KEY = "TabBullets";
+
+	private final File indexFile;
+	private final File searchIndexFile;
+	private final File notesDirectory;
+	// Journal of the modifications made since the notes were last saved.
+	private final NoteJournal journal;
+	// Checksums of the body files currently on disk, indexed by note ID.
+	private final Map<String, Long> checksums = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructor. Notes will be stored in the given directory.
+	 * 
+	 * @param directory
+	 */
+	public NoteStore(File directory) {
+		indexFile = new File(directory, FN_INDEX);
+		searchIndexFile = new File(directory, FN_SEARCH_INDEX);
+		notesDirectory = new File(directory, FN_NOTES_DIRECTORY);
+		journal = new NoteJournal(directory);
+	}
+
+	/**
+	 * Generates a new identifier for a note.
+	 * 
+	 * @return unique note ID
+	 */
+	public static String createNoteId() {
+		return UUID.randomUUID().toString();
+	}
+
+	/**
+	 * Returns the journal in which modifications of the notes of this store are recorded between saves.
+	 * 
+	 * @return the journal
+	 */
+	public NoteJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Indicates whether notes were previously saved in this store.
+	 * 
+	 * @return true if an index file exists, false otherwise
+	 */
+	public boolean exists() {
+		return indexFile.exists();
+	}
+
+	/**
+	 * Indicates whether the contents of a note are present in this store.
+	 * 
+	 * @param id
+	 * @return true if a body file was loaded or saved for the note, false otherwise
+	 */
+	public boolean containsBody(String id) {
+		return checksums.containsKey(id);
+	}
+
+	/**
+	 * Returns the checksum of the body of a note, as last read or written.
+	 * 
+	 * @param id
+	 * @return the checksum, or null if the store does not contain the body of the note
+	 */
+	public Long getChecksum(String id) {
+		return checksums.get(id);
+	}
+
+	/**
+	 * Loads the index of the store, without reading any of the note bodies.
+	 * 
+	 * @return entries describing the stored notes, in order
+	 * @throws IOException
+	 */
+	public List<IndexEntry> loadIndex() throws IOException {
+		return readIndex(true);
+	}
+
+	/**
+	 * Reads the index of the store without updating the checksums known to the store, so that it can be called from
+	 * another thread while notes are being saved.
+	 * 
+	 * @return entries describing the stored notes, in order
+	 * @throws IOException
+	 */
+	public List<IndexEntry> peekIndex() throws IOException {
+		return readIndex(false);
+	}
+
+	/**
+	 * Reads the contents of a note.
+	 * 
+	 * @param id
+	 * @return the body of the note
+	 * @throws IOException
+	 */
+	public NoteBody readBody(String id) throws IOException {
+		byte[] bytes = Files.readAllBytes(getBodyFile(id).toPath());
+		long checksum = computeChecksum(bytes);
+		Long expectedChecksum = checksums.put(id, checksum);
+		if (expectedChecksum != null && expectedChecksum != checksum) {
+			// Body was written but the index was not updated afterwards, for instance if Eclipse was killed.
+			Notepad4e.getDefault().getLog()
+					.log(new Status(IStatus.WARNING, Notepad4e.PLUGIN_ID, LocalStrings.noteChecksumWarningMsg));
+		}
+		return decodeBody(bytes);
+	}
+
+	/**
+	 * Reads the contents of a note without updating the checksums known to the store, so that it can be called from
+	 * another thread while notes are being saved.
+	 * 
+	 * @param id
+	 * @return the body of the note
+	 * @throws IOException
+	 */
+	public NoteBody peekBody(String id) throws IOException {
+		return decodeBody(Files.readAllBytes(getBodyFile(id).toPath()));
+	}
+
+	/**
+	 * Saves the given notes. Body files are only written for the provided snapshots, the index is always rewritten and
+	 * body files of notes no longer present in the index are deleted.
+	 * 
+	 * @param entries all the notes, in order
+	 * @param snapshots contents of the notes that must be saved
+	 * @throws IOException
+	 */
+	public void save(List<IndexEntry> entries, Collection<NoteSnapshot> snapshots) throws IOException {
+		Files.createDirectories(notesDirectory.toPath());
+		for (NoteSnapshot snapshot : snapshots) {
+			writeBody(snapshot.getId(), snapshot.getText().toString(), snapshot.getStyles(), snapshot.getBulletLines(),
+					snapshot.getJournalSequence());
+		}
+		writeIndex(entries);
+	}
+
+	/**
+	 * Reads the search index saved alongside the notes.
+	 * 
+	 * @return the encoded search index, or null if none was saved
+	 * @throws IOException
+	 */
+	public byte[] readSearchIndex() throws IOException {
+		return searchIndexFile.exists() ? Files.readAllBytes(searchIndexFile.toPath()) : null;
+	}
+
+	/**
+	 * Writes the search index alongside the notes.
+	 * 
+	 * @param searchIndex encoded search index
+	 * @throws IOException
+	 */
+	public void writeSearchIndex(byte[] searchIndex) throws IOException {
+		writeAtomically(searchIndexFile.toPath(), searchIndex);
+	}
+
+	/**
+	 * Converts notes stored by previous versions of the plugin in a single DialogSettings section.
+	 * 
+	 * @param legacySection
+	 * @throws IOException
+	 */
+	public void migrate(IDialogSettings legacySection) throws IOException {
+		Files.createDirectories(notesDirectory.toPath());
+		List<IndexEntry> entries = new ArrayList<>();
+		String numOfTabsString = legacySection.get(LEGACY_COUNT_KEY);
+		int numOfTabs = numOfTabsString == null ? 0 : Integer.parseInt(numOfTabsString);
+		for (int tabIndex = 0; tabIndex < numOfTabs; ++tabIndex) {
+			String title = legacySection.get(LEGACY_TITLE_PREFIX_KEY + tabIndex);
+			String text = legacySection.get(LEGACY_TEXT_PREFIX_KEY + tabIndex);
+			if (title != null && text != null) {
+				boolean editable = legacySection.get(LEGACY_EDITABLE_PREFIX_KEY + tabIndex) == null ? true
+						: legacySection.getBoolean(LEGACY_EDITABLE_PREFIX_KEY + tabIndex);
+				// Style and bullets can be null if upgrading from old plugin versions.
+				String style = legacySection.get(LEGACY_STYLE_PREFIX_KEY + tabIndex);
+				String bullets = legacySection.get(LEGACY_BULLETS_PREFIX_KEY + tabIndex);
+				String id = createNoteId();
+				writeBody(id, text, NoteCodec.parseLegacyStyles(style), NoteCodec.parseLegacyBullets(bullets), 0L);
+				entries.add(new IndexEntry(id, title, editable));
+			}
+		}
+		writeIndex(entries);
+	}
+
+	/**
+	 * Reads the index file.
+	 * 
+	 * @param recordChecksums whether the checksums of the body files are recorded as the ones currently on disk
+	 * @return entries describing the stored notes, in order
+	 * @throws IOException
+	 */
+	private List<IndexEntry> readIndex(boolean recordChecksums) throws IOException {
+		List<IndexEntry> entries = new ArrayList<>();
+		if (!indexFile.exists()) {
+			return entries;
+		}
+		DialogSettings index = new DialogSettings(INDEX_SECTION);
+		index.load(indexFile.getPath());
+		int numOfNotes = index.getInt(INDEX_COUNT_KEY);
+		for (int noteIndex = 0; noteIndex < numOfNotes; ++noteIndex) {
+			IDialogSettings noteSection = index.getSection(Integer.toString(noteIndex));
+			if (noteSection != null && noteSection.get(INDEX_ID_KEY) != null) {
+				String id = noteSection.get(INDEX_ID_KEY);
+				if (recordChecksums && noteSection.get(INDEX_CHECKSUM_KEY) != null) {
+					checksums.put(id, noteSection.getLong(INDEX_CHECKSUM_KEY));
+				}
+				entries.add(new IndexEntry(id, noteSection.get(INDEX_TITLE_KEY),
+						noteSection.getBoolean(INDEX_EDITABLE_KEY)));
+			}
+		}
+		return entries;
+	}
+
+	private static NoteBody decodeBody(byte[] bytes) throws IOException {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			int version = in.readInt();
+			if (version == BODY_VERSION) {
+				long journalSequence = in.readLong();
+				return new NoteBody(readString(in), NoteCodec.readStyles(in), NoteCodec.readBullets(in),
+						journalSequence);
+			} else if (version == UNSEQUENCED_BODY_VERSION) {
+				return new NoteBody(readString(in), NoteCodec.readStyles(in), NoteCodec.readBullets(in), 0L);
+			} else if (version == CSV_BODY_VERSION) {
+				return new NoteBody(readString(in), NoteCodec.parseLegacyStyles(readString(in)),
+						NoteCodec.parseLegacyBullets(readString(in)), 0L);
+			}
+			throw new IOException("Unsupported note version " + version);
+		}
+	}
+
+	/**
+	 * Writes the body file of a note, unless its contents are unchanged.
+	 * 
+	 * @param id
+	 * @param text
+	 * @param styles
+	 * @param bulletLines
+	 * @param journalSequence sequence number of the last journal record included in the body
+	 * @throws IOException
+	 */
+	private void writeBody(String id, String text, StyleRange[] styles, int[] bulletLines, long journalSequence)
+			throws IOException {
+		byte[] body = encodeBody(text, styles, bulletLines, journalSequence);
+		long checksum = computeChecksum(body);
+		Long previousChecksum = checksums.get(id);
+		if (previousChecksum == null || previousChecksum != checksum) {
+			writeAtomically(getBodyFile(id).toPath(), body);
+			checksums.put(id, checksum);
+		}
+	}
+
+	/**
+	 * Rewrites the index file and deletes body files of notes that are no longer indexed.
+	 * 
+	 * @param entries
+	 * @throws IOException
+	 */
+	private void writeIndex(List<IndexEntry> entries) throws IOException {
+		DialogSettings index = new DialogSettings(INDEX_SECTION);
+		index.put(INDEX_VERSION_KEY, INDEX_VERSION);
+		index.put(INDEX_COUNT_KEY, entries.size());
+		Set<String> indexedIds = new HashSet<>();
+		for (int noteIndex = 0; noteIndex < entries.size(); ++noteIndex) {
+			IndexEntry entry = entries.get(noteIndex);
+			IDialogSettings noteSection = index.addNewSection(Integer.toString(noteIndex));
+			noteSection.put(INDEX_ID_KEY, entry.getId());
+			noteSection.put(INDEX_TITLE_KEY, entry.getTitle());
+			noteSection.put(INDEX_EDITABLE_KEY, entry.isEditable());
+			Long checksum = checksums.get(entry.getId());
+			if (checksum != null) {
+				noteSection.put(INDEX_CHECKSUM_KEY, checksum);
+			}
+			indexedIds.add(entry.getId());
+		}
+		File tempIndexFile = new File(indexFile.getPath() + TEMP_EXTENSION);
+		index.save(tempIndexFile.getPath());
+		moveAtomically(tempIndexFile.toPath(), indexFile.toPath());
+
+		// Bodies are only deleted once the index no longer references them.
+		for (String id : new ArrayList<>(checksums.keySet())) {
+			if (!indexedIds.contains(id)) {
+				Files.deleteIfExists(getBodyFile(id).toPath());
+				checksums.remove(id);
+			}
+		}
+	}
+
+	private File getBodyFile(String id) {
+		return new File(notesDirectory, id + BODY_EXTENSION);
+	}
+
+	private static byte[] encodeBody(String text, StyleRange[] styles, int[] bulletLines, long journalSequence)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(text.length() + 4 * styles.length + 24);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(BODY_VERSION);
+			out.writeLong(journalSequence);
+			writeString(out, text);
+			NoteCodec.writeStyles(out, styles);
+			NoteCodec.writeBullets(out, bulletLines);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void writeString(DataOutputStream out, String string) throws IOException {
+		// DataOutputStream.writeUTF is limited to 64KB.
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static long computeChecksum(byte[] bytes) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		return crc.getValue();
+	}
+
+	/**
+	 * Writes a file via a temporary file, so that a partially written file never replaces a valid one.
+	 * 
+	 * @param target
+	 * @param bytes
+	 * @throws IOException
+	 */
+	private static void writeAtomically(Path target, byte[] bytes) throws IOException {
+		Path tempFile = target.resolveSibling(target.getFileName() + TEMP_EXTENSION);
+		Files.write(tempFile, bytes);
+		moveAtomically(tempFile, target);
+	}
+
+	private static void moveAtomically(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Class describing a note in the index of the store.
+	 * 
+	 * @author Pyves
+	 *
+	 */
+	public static final class IndexEntry {
+
+		private final String id;
+		private final String title;
+		private final boolean editable;
+
+		public IndexEntry(String id, String title, boolean editable) {
+			this.id = id;
+			this.title = title;
+			this.editable = editable;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public String getTitle() {
+			return title;
+		}
+
+		public boolean isEditable() {
+			return editable;
+		}
+	}
+
+	/**
+	 * Class containing the contents of a note, as read from its body file.
+	 * 
+	 * @author Pyves
+	 *
+	 */
+	public static final class NoteBody {
+
+		private final String text;
+		private final StyleRange[] styles;
+		private final int[] bulletLines;
+		private final long journalSequence;
+
+		NoteBody(String text, StyleRange[] styles, int[] bulletLines, long journalSequence) {
+			this.text = text;
+			this.styles = styles;
+			this.bulletLines = bulletLines;
+			this.journalSequence = journalSequence;
+		}
+
+		public String getText() {
+			return text;
+		}
+
+		public StyleRange[] getStyles() {
+			return styles;
+		}
+
+		public int[] getBulletLines() {
+			return bulletLines;
+		}
+
+		/**
+		 * Returns the sequence number of the last journal record included in the body.
+		 * 
+		 * @return the sequence number, 0 if none
+		 */
+		public long getJournalSequence() {
+			return journalSequence;
+		}
+	}
+}
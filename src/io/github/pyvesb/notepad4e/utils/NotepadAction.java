@@ -22,8 +22,13 @@ public enum NotepadAction {
 	UNDO_TEXT(null, "notepad4e.command.text.undo", null),
 	REDO_TEXT(null, "notepad4e.command.text.redo", null),
 	CLOSE_NOTE(null, "notepad4e.command.note.close", null),
+	SEARCH_NOTES(LocalStrings.iconSearch, "notepad4e.command.note.search", "/icons/search.png"),
+	QUICK_SWITCH(LocalStrings.iconQuickSwitch, "notepad4e.command.note.switch", "/icons/note.png"),
 	TOGGLE_EDITABLE_NOTE(LocalStrings.iconLock, null, "/icons/deadlock_view.png"),
 	EXPORT_NOTE(LocalStrings.iconExport, null, "/icons/save_edit.png"),
+	EXPORT_ALL_NOTES(LocalStrings.iconExportAll, null, "/icons/save_edit.png"),
+	IMPORT_FILES(LocalStrings.iconImportFiles, null, "/icons/file-new-16x16.png"),
+	IMPORT_DIRECTORY(LocalStrings.iconImportDirectory, null, "/icons/file-new-16x16.png"),
 	PREFERENCES(LocalStrings.iconPreferences, null, "/icons/settings_obj.png"),
 	WEBSITE(LocalStrings.iconWebpage, null, "/icons/web.png"),
 	CHANGELOG(LocalStrings.iconChangelog, null, "/icons/change.gif");
@@ -0,0 +1,669 @@
+package io.github.pyvesb.notepad4e.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.swt.custom.StyledTextContent;
+import org.eclipse.swt.custom.TextChangeListener;
+import org.eclipse.swt.custom.TextChangedEvent;
+import org.eclipse.swt.custom.TextChangingEvent;
+
+/**
+ * Class storing the text of a note as a piece table. The text is never copied when modified: pieces referring to
+ * append-only buffers are arranged in a balanced tree (a treap), each node knowing the length and number of line
+ * breaks of its subtree. Replacing text, retrieving ranges of text and looking up lines are therefore logarithmic in
+ * the number of pieces, and snapshots only copy the list of pieces.
+ * 
+ * Line delimiters follow the same rules as the default StyledText content: "\r\n", "\r" and "\n" each end a line. A
+ * "\r\n" delimiter is always kept within a single piece, so that line breaks can be counted independently in each
+ * piece.
+ * 
+ * @author Pyves
+ *
+ */
+public class PieceTableContent implements StyledTextContent {
+
+	// Capacity of the buffers receiving inserted text; larger insertions get a buffer of their own.
+	private static final int CHUNK_CAPACITY = 64 * 1024;
+	private static final String LINE_DELIMITER = System.lineSeparator();
+
+	private final List<TextChangeListener> textChangeListeners = new ArrayList<>();
+	private final Random random = new Random();
+	// Buffer receiving small insertions, replaced once full.
+	private Buffer currentChunk = new Buffer(CHUNK_CAPACITY);
+	private Node root;
+
+	@Override
+	public void addTextChangeListener(TextChangeListener listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("Listener cannot be null");
+		}
+		textChangeListeners.add(listener);
+	}
+
+	@Override
+	public void removeTextChangeListener(TextChangeListener listener) {
+		textChangeListeners.remove(listener);
+	}
+
+	@Override
+	public int getCharCount() {
+		return length(root);
+	}
+
+	@Override
+	public int getLineCount() {
+		return breaks(root) + 1;
+	}
+
+	@Override
+	public String getLineDelimiter() {
+		return LINE_DELIMITER;
+	}
+
+	@Override
+	public int getOffsetAtLine(int lineIndex) {
+		if (lineIndex < 0 || lineIndex >= getLineCount()) {
+			throw new IllegalArgumentException("Invalid line index " + lineIndex);
+		}
+		return lineIndex == 0 ? 0 : getOffsetAfterBreak(lineIndex);
+	}
+
+	@Override
+	public int getLineAtOffset(int offset) {
+		if (offset < 0 || offset > getCharCount()) {
+			throw new IllegalArgumentException("Invalid offset " + offset);
+		}
+		int lineIndex = 0;
+		Node node = root;
+		while (node != null) {
+			int leftLength = length(node.left);
+			if (offset < leftLength) {
+				node = node.left;
+			} else {
+				offset -= leftLength;
+				lineIndex += breaks(node.left);
+				if (offset < node.length) {
+					return lineIndex + node.buffer.countLineStarts(node.start, node.start + offset);
+				}
+				offset -= node.length;
+				lineIndex += node.breaks;
+				node = node.right;
+			}
+		}
+		return lineIndex;
+	}
+
+	@Override
+	public String getLine(int lineIndex) {
+		int lineStart = getOffsetAtLine(lineIndex);
+		int lineEnd = lineIndex + 1 < getLineCount() ? getOffsetAtLine(lineIndex + 1) : getCharCount();
+		String line = getTextRange(lineStart, lineEnd - lineStart);
+		// Remove the line delimiter.
+		int delimiterStart = line.length();
+		if (delimiterStart > 0 && line.charAt(delimiterStart - 1) == '\n') {
+			--delimiterStart;
+		}
+		if (delimiterStart > 0 && line.charAt(delimiterStart - 1) == '\r') {
+			--delimiterStart;
+		}
+		return line.substring(0, delimiterStart);
+	}
+
+	@Override
+	public String getTextRange(int start, int length) {
+		if (start < 0 || length < 0 || start + length > getCharCount()) {
+			throw new IllegalArgumentException("Invalid range " + start + "+" + length);
+		}
+		char[] text = new char[length];
+		copyRange(root, start, start + length, text, 0);
+		return new String(text);
+	}
+
+	@Override
+	public void replaceTextRange(int start, int replaceLength, String text) {
+		if (start < 0 || replaceLength < 0 || start + replaceLength > getCharCount()) {
+			throw new IllegalArgumentException("Invalid range " + start + "+" + replaceLength);
+		}
+		// Appending to a buffer does not modify the content, the new piece can be created before notifying listeners.
+		Node newNode = null;
+		// Piece extended with the inserted text, null if a new piece is created.
+		Node extendedPiece = replaceLength == 0 ? findExtensiblePiece(start, text) : null;
+		int newLineCount;
+		if (extendedPiece != null) {
+			int chunkEnd = currentChunk.length;
+			currentChunk.append(text);
+			newLineCount = currentChunk.countLineStarts(chunkEnd, currentChunk.length);
+		} else {
+			newNode = text.isEmpty() ? null : createNode(text);
+			newLineCount = breaks(newNode);
+		}
+
+		TextChangingEvent changingEvent = new TextChangingEvent(this);
+		changingEvent.start = start;
+		changingEvent.newText = text;
+		changingEvent.replaceCharCount = replaceLength;
+		changingEvent.newCharCount = text.length();
+		changingEvent.replaceLineCount = countReplacedLines(start, replaceLength);
+		changingEvent.newLineCount = newLineCount;
+		for (TextChangeListener listener : new ArrayList<>(textChangeListeners)) {
+			listener.textChanging(changingEvent);
+		}
+
+		if (extendedPiece != null) {
+			extendPiece(root, start, text.length());
+		} else {
+			Node[] startSplit = split(root, start);
+			Node[] endSplit = split(startSplit[1], replaceLength);
+			root = merge(merge(startSplit[0], newNode), endSplit[1]);
+		}
+		joinLineDelimiter(start);
+		if (!text.isEmpty()) {
+			joinLineDelimiter(start + text.length());
+		}
+
+		TextChangedEvent changedEvent = new TextChangedEvent(this);
+		for (TextChangeListener listener : new ArrayList<>(textChangeListeners)) {
+			listener.textChanged(changedEvent);
+		}
+	}
+
+	@Override
+	public void setText(String text) {
+		currentChunk = new Buffer(CHUNK_CAPACITY);
+		root = text.isEmpty() ? null : createNode(text);
+		TextChangedEvent changedEvent = new TextChangedEvent(this);
+		for (TextChangeListener listener : new ArrayList<>(textChangeListeners)) {
+			listener.textSet(changedEvent);
+		}
+	}
+
+	/**
+	 * Takes an immutable copy of the text. Only the list of pieces is copied, the characters themselves are shared with
+	 * the content as buffers are never modified once written. The returned sequence can be used on any thread.
+	 * 
+	 * @return snapshot of the text
+	 */
+	public CharSequence createSnapshot() {
+		List<Node> pieces = new ArrayList<>();
+		collectPieces(root, pieces);
+		char[][] pieceChars = new char[pieces.size()][];
+		int[] pieceStarts = new int[pieces.size()];
+		int[] pieceOffsets = new int[pieces.size() + 1];
+		for (int pieceIndex = 0; pieceIndex < pieces.size(); ++pieceIndex) {
+			Node piece = pieces.get(pieceIndex);
+			pieceChars[pieceIndex] = piece.buffer.chars;
+			pieceStarts[pieceIndex] = piece.start;
+			pieceOffsets[pieceIndex + 1] = pieceOffsets[pieceIndex] + piece.length;
+		}
+		return new Snapshot(pieceChars, pieceStarts, pieceOffsets);
+	}
+
+	/**
+	 * Appends text to a buffer and creates a node referring to it.
+	 * 
+	 * @param text
+	 * @return the new node
+	 */
+	private Node createNode(String text) {
+		Buffer buffer;
+		if (text.length() > CHUNK_CAPACITY / 2) {
+			buffer = new Buffer(text.length());
+		} else {
+			// A "\r\n" delimiter must not be formed across two insertions in the same buffer, as both would already
+			// have been counted as line breaks.
+			if (currentChunk.remaining() < text.length()
+					|| currentChunk.length > 0 && currentChunk.chars[currentChunk.length - 1] == '\r'
+							&& text.charAt(0) == '\n') {
+				currentChunk = new Buffer(CHUNK_CAPACITY);
+			}
+			buffer = currentChunk;
+		}
+		int start = buffer.length;
+		buffer.append(text);
+		return new Node(buffer, start, text.length(), random.nextInt());
+	}
+
+	/**
+	 * Finds the piece that an insertion can extend rather than creating a new piece, which is the case when text is
+	 * typed after the previous insertion: the piece ending at the offset must also end the current chunk, and the chunk
+	 * must have room for the text.
+	 * 
+	 * @param offset
+	 * @param text
+	 * @return the piece to extend, or null if a new piece must be created
+	 */
+	private Node findExtensiblePiece(int offset, String text) {
+		if (text.isEmpty() || text.length() > CHUNK_CAPACITY / 2 || currentChunk.remaining() < text.length()
+				|| currentChunk.length == 0) {
+			return null;
+		}
+		// A "\r\n" delimiter must not be formed across two insertions, as both would already have been counted.
+		if (currentChunk.chars[currentChunk.length - 1] == '\r' && text.charAt(0) == '\n') {
+			return null;
+		}
+		Node node = root;
+		while (node != null) {
+			int leftLength = length(node.left);
+			if (offset <= leftLength) {
+				node = node.left;
+			} else if (offset <= leftLength + node.length) {
+				boolean extensible = offset == leftLength + node.length && node.buffer == currentChunk
+						&& node.start + node.length == currentChunk.length;
+				return extensible ? node : null;
+			} else {
+				offset -= leftLength + node.length;
+				node = node.right;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Extends the piece ending at the given offset with characters appended to its buffer, updating the lengths and
+	 * line breaks of the subtrees containing it.
+	 * 
+	 * @param node
+	 * @param offset end of the piece, relative to the subtree
+	 * @param addedLength
+	 */
+	private static void extendPiece(Node node, int offset, int addedLength) {
+		int leftLength = length(node.left);
+		if (offset <= leftLength) {
+			extendPiece(node.left, offset, addedLength);
+		} else if (offset == leftLength + node.length) {
+			node.extend(addedLength);
+		} else {
+			extendPiece(node.right, offset - leftLength - node.length, addedLength);
+		}
+		node.update();
+	}
+
+	/**
+	 * Ensures that a "\r\n" delimiter at the given offset is contained within a single piece.
+	 * 
+	 * @param offset position between the two characters of the delimiter
+	 */
+	private void joinLineDelimiter(int offset) {
+		if (offset <= 0 || offset >= getCharCount() || charAt(offset - 1) != '\r' || charAt(offset) != '\n') {
+			return;
+		}
+		Node[] startSplit = split(root, offset - 1);
+		Node[] endSplit = split(startSplit[1], 2);
+		Node delimiter = endSplit[0];
+		if (delimiter.left != null || delimiter.right != null) {
+			// Characters are in different pieces, replace them by a single piece.
+			delimiter = createNode("\r\n");
+		}
+		root = merge(merge(startSplit[0], delimiter), endSplit[1]);
+	}
+
+	private int countReplacedLines(int start, int replaceLength) {
+		if (replaceLength == 0) {
+			return 0;
+		}
+		int end = start + replaceLength;
+		int replacedLines = getLineAtOffset(end) - getLineAtOffset(start);
+		// A range ending between the two characters of a "\r\n" delimiter still contains a line delimiter.
+		if (end < getCharCount() && charAt(end - 1) == '\r' && charAt(end) == '\n') {
+			++replacedLines;
+		}
+		return replacedLines;
+	}
+
+	private char charAt(int offset) {
+		Node node = root;
+		while (true) {
+			int leftLength = length(node.left);
+			if (offset < leftLength) {
+				node = node.left;
+			} else if (offset < leftLength + node.length) {
+				return node.buffer.chars[node.start + offset - leftLength];
+			} else {
+				offset -= leftLength + node.length;
+				node = node.right;
+			}
+		}
+	}
+
+	/**
+	 * Returns the offset following the nth line break of the text.
+	 * 
+	 * @param breakNumber number of the line break, starting at 1
+	 * @return the offset of the start of the line following the break
+	 */
+	private int getOffsetAfterBreak(int breakNumber) {
+		int offset = 0;
+		Node node = root;
+		while (true) {
+			int leftBreaks = breaks(node.left);
+			if (breakNumber <= leftBreaks) {
+				node = node.left;
+			} else {
+				breakNumber -= leftBreaks;
+				offset += length(node.left);
+				if (breakNumber <= node.breaks) {
+					return offset + node.getOffsetAfterBreak(breakNumber);
+				}
+				breakNumber -= node.breaks;
+				offset += node.length;
+				node = node.right;
+			}
+		}
+	}
+
+	/**
+	 * Copies the characters of a subtree within a given range.
+	 * 
+	 * @param node
+	 * @param start start of the range, relative to the subtree
+	 * @param end end of the range, relative to the subtree
+	 * @param destination
+	 * @param destinationOffset position in the destination receiving the first character of the range
+	 */
+	private static void copyRange(Node node, int start, int end, char[] destination, int destinationOffset) {
+		while (node != null && start < end) {
+			int leftLength = length(node.left);
+			if (start < leftLength) {
+				copyRange(node.left, start, Math.min(end, leftLength), destination, destinationOffset);
+			}
+			int pieceStart = Math.max(start, leftLength);
+			int pieceEnd = Math.min(end, leftLength + node.length);
+			if (pieceStart < pieceEnd) {
+				System.arraycopy(node.buffer.chars, node.start + pieceStart - leftLength, destination,
+						destinationOffset + pieceStart - start, pieceEnd - pieceStart);
+			}
+			// Continue with the right subtree.
+			int rightStart = leftLength + node.length;
+			destinationOffset += Math.max(rightStart - start, 0);
+			start = Math.max(start - rightStart, 0);
+			end -= rightStart;
+			node = node.right;
+		}
+	}
+
+	private static void collectPieces(Node node, List<Node> pieces) {
+		while (node != null) {
+			collectPieces(node.left, pieces);
+			pieces.add(node);
+			node = node.right;
+		}
+	}
+
+	/**
+	 * Splits a tree in two trees respectively containing the text before and after an offset. A piece containing the
+	 * offset is split in two pieces.
+	 * 
+	 * @param node
+	 * @param offset
+	 * @return array containing the two trees
+	 */
+	private Node[] split(Node node, int offset) {
+		if (node == null) {
+			return new Node[2];
+		}
+		int leftLength = length(node.left);
+		if (offset <= leftLength) {
+			Node[] leftSplit = split(node.left, offset);
+			node.left = leftSplit[1];
+			node.update();
+			return new Node[] { leftSplit[0], node };
+		} else if (offset >= leftLength + node.length) {
+			Node[] rightSplit = split(node.right, offset - leftLength - node.length);
+			node.right = rightSplit[0];
+			node.update();
+			return new Node[] { node, rightSplit[1] };
+		}
+		int pieceOffset = offset - leftLength;
+		Node leftPiece = new Node(node.buffer, node.start, pieceOffset, node.priority);
+		Node rightPiece = new Node(node.buffer, node.start + pieceOffset, node.length - pieceOffset, random.nextInt());
+		return new Node[] { merge(node.left, leftPiece), merge(rightPiece, node.right) };
+	}
+
+	/**
+	 * Concatenates two trees.
+	 * 
+	 * @param left
+	 * @param right
+	 * @return the merged tree
+	 */
+	private static Node merge(Node left, Node right) {
+		if (left == null) {
+			return right;
+		} else if (right == null) {
+			return left;
+		} else if (left.priority > right.priority) {
+			left.right = merge(left.right, right);
+			left.update();
+			return left;
+		}
+		right.left = merge(left, right.left);
+		right.update();
+		return right;
+	}
+
+	private static int length(Node node) {
+		return node == null ? 0 : node.totalLength;
+	}
+
+	private static int breaks(Node node) {
+		return node == null ? 0 : node.totalBreaks;
+	}
+
+	/**
+	 * Class representing an append-only buffer of characters, along with the positions at which lines start.
+	 * 
+	 * @author Pyves
+	 *
+	 */
+	private static final class Buffer {
+
+		final char[] chars;
+		int length;
+		// Positions following a line delimiter, in increasing order. A "\r\n" delimiter only has one position.
+		int[] lineStarts = new int[16];
+		int lineStartCount;
+
+		Buffer(int capacity) {
+			chars = new char[capacity];
+		}
+
+		int remaining() {
+			return chars.length - length;
+		}
+
+		void append(String text) {
+			text.getChars(0, text.length(), chars, length);
+			int end = length + text.length();
+			for (int position = length; position < end; ++position) {
+				char character = chars[position];
+				if (character == '\n' || character == '\r' && (position + 1 == end || chars[position + 1] != '\n')) {
+					if (lineStartCount == lineStarts.length) {
+						lineStarts = Arrays.copyOf(lineStarts, 2 * lineStartCount);
+					}
+					lineStarts[lineStartCount++] = position + 1;
+				}
+			}
+			length = end;
+		}
+
+		/**
+		 * Counts the line starts in a range of the buffer.
+		 * 
+		 * @param from exclusive
+		 * @param to inclusive
+		 * @return the number of positions following a delimiter strictly after from and before or at to
+		 */
+		int countLineStarts(int from, int to) {
+			return upperBound(to) - upperBound(from);
+		}
+
+		/**
+		 * Returns the index of the first line start greater than the given position.
+		 * 
+		 * @param position
+		 * @return index in lineStarts
+		 */
+		int upperBound(int position) {
+			int low = 0;
+			int high = lineStartCount;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (lineStarts[middle] <= position) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+	}
+
+	/**
+	 * Class representing a node of the tree, in other words a piece of text.
+	 * 
+	 * @author Pyves
+	 *
+	 */
+	private static final class Node {
+
+		// Characters of the piece.
+		final Buffer buffer;
+		final int start;
+		// Pieces ending their buffer can be extended by later insertions.
+		int length;
+		// Number of line breaks in the piece.
+		int breaks;
+		// Random priority used to keep the tree balanced.
+		final int priority;
+		Node left;
+		Node right;
+		// Length and line breaks of the subtree.
+		int totalLength;
+		int totalBreaks;
+
+		Node(Buffer buffer, int start, int length, int priority) {
+			this.buffer = buffer;
+			this.start = start;
+			this.length = length;
+			this.priority = priority;
+			int end = start + length;
+			int pieceBreaks = buffer.countLineStarts(start, end);
+			if (endsWithSplitDelimiter()) {
+				// The following "\n" is not part of the piece, its line start is outside of the range.
+				++pieceBreaks;
+			}
+			this.breaks = pieceBreaks;
+			update();
+		}
+
+		/**
+		 * Extends the piece with characters appended to its buffer. The piece must end its buffer before the characters
+		 * are appended.
+		 * 
+		 * @param addedLength
+		 */
+		void extend(int addedLength) {
+			length += addedLength;
+			breaks = buffer.countLineStarts(start, start + length);
+		}
+
+		/**
+		 * Returns the offset following the nth line break of the piece.
+		 * 
+		 * @param breakNumber number of the line break, starting at 1
+		 * @return offset relative to the start of the piece
+		 */
+		int getOffsetAfterBreak(int breakNumber) {
+			int lineStartIndex = buffer.upperBound(start) + breakNumber - 1;
+			if (lineStartIndex < buffer.lineStartCount && buffer.lineStarts[lineStartIndex] <= start + length) {
+				return buffer.lineStarts[lineStartIndex] - start;
+			}
+			// Last break of a piece ending with the "\r" of a "\r\n" delimiter of its buffer.
+			return length;
+		}
+
+		void update() {
+			totalLength = length(left) + length + length(right);
+			totalBreaks = breaks(left) + breaks + breaks(right);
+		}
+
+		private boolean endsWithSplitDelimiter() {
+			int end = start + length;
+			return buffer.chars[end - 1] == '\r' && end < buffer.length && buffer.chars[end] == '\n';
+		}
+	}
+
+	/**
+	 * Class representing an immutable copy of the text.
+	 * 
+	 * @author Pyves
+	 *
+	 */
+	private static final class Snapshot implements CharSequence {
+
+		private final char[][] pieceChars;
+		private final int[] pieceStarts;
+		// Offset of each piece in the text, followed by the length of the text.
+		private final int[] pieceOffsets;
+
+		Snapshot(char[][] pieceChars, int[] pieceStarts, int[] pieceOffsets) {
+			this.pieceChars = pieceChars;
+			this.pieceStarts = pieceStarts;
+			this.pieceOffsets = pieceOffsets;
+		}
+
+		@Override
+		public int length() {
+			return pieceOffsets[pieceOffsets.length - 1];
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index < 0 || index >= length()) {
+				throw new IndexOutOfBoundsException("Invalid index " + index);
+			}
+			int pieceIndex = Arrays.binarySearch(pieceOffsets, index);
+			if (pieceIndex < 0) {
+				pieceIndex = -pieceIndex - 2;
+			} else {
+				// Skip empty pieces, if any.
+				while (pieceOffsets[pieceIndex + 1] == index) {
+					++pieceIndex;
+				}
+			}
+			return pieceChars[pieceIndex][pieceStarts[pieceIndex] + index - pieceOffsets[pieceIndex]];
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			if (start < 0 || end > length() || start > end) {
+				throw new IndexOutOfBoundsException("Invalid range " + start + "-" + end);
+			}
+			char[] text = new char[end - start];
+			// Start with the piece containing the start of the range, so that copying chunks of a large text does not
+			// scan all the pieces every time.
+			int firstPiece = Arrays.binarySearch(pieceOffsets, 0, pieceChars.length, start);
+			if (firstPiece < 0) {
+				firstPiece = Math.max(0, -firstPiece - 2);
+			}
+			for (int pieceIndex = firstPiece; pieceIndex < pieceChars.length
+					&& pieceOffsets[pieceIndex] < end; ++pieceIndex) {
+				int copyStart = Math.max(start, pieceOffsets[pieceIndex]);
+				int copyEnd = Math.min(end, pieceOffsets[pieceIndex + 1]);
+				if (copyStart < copyEnd) {
+					System.arraycopy(pieceChars[pieceIndex], pieceStarts[pieceIndex] + copyStart - pieceOffsets[pieceIndex],
+							text, copyStart - start, copyEnd - copyStart);
+				}
+			}
+			return new String(text);
+		}
+
+		@Override
+		public String toString() {
+			return subSequence(0, length()).toString();
+		}
+	}
+}
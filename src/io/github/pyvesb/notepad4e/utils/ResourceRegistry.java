@@ -0,0 +1,108 @@
+package io.github.pyvesb.notepad4e.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.graphics.FontData;
+import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.graphics.Resource;
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Class handing out colors and fonts shared by all notes. Resources are reference-counted: each acquire call must be
+ * matched by a release call, and a resource is disposed once it is no longer used by any note. Must only be used from
+ * the UI thread.
+ * 
+ * @author Pyves
+ *
+ */
+public class ResourceRegistry {
+
+	private final Map<RGB, SharedResource<Color>> colors = new HashMap<>();
+	// Fonts are identified by the string representation of their FontData.
+	private final Map<String, SharedResource<Font>> fonts = new HashMap<>();
+
+	/**
+	 * Returns a shared color with the given red, green and blue components.
+	 * 
+	 * @param rgb
+	 * @return the shared color, to be released with releaseColor
+	 */
+	public Color acquireColor(RGB rgb) {
+		SharedResource<Color> color = colors.get(rgb);
+		if (color == null) {
+			color = new SharedResource<>(new Color(Display.getCurrent(), rgb));
+			colors.put(rgb, color);
+		}
+		++color.references;
+		return color.resource;
+	}
+
+	/**
+	 * Releases a color acquired with acquireColor, disposing it if it is no longer used.
+	 * 
+	 * @param color
+	 */
+	public void releaseColor(Color color) {
+		release(colors, color.getRGB());
+	}
+
+	/**
+	 * Returns a shared font corresponding to the given data.
+	 * 
+	 * @param fontData
+	 * @return the shared font, to be released with releaseFont
+	 */
+	public Font acquireFont(FontData fontData) {
+		String key = fontData.toString();
+		SharedResource<Font> font = fonts.get(key);
+		if (font == null) {
+			font = new SharedResource<>(new Font(Display.getCurrent(), fontData));
+			fonts.put(key, font);
+		}
+		++font.references;
+		return font.resource;
+	}
+
+	/**
+	 * Releases a font acquired with acquireFont, disposing it if it is no longer used.
+	 * 
+	 * @param fontData data with which the font was acquired
+	 */
+	public void releaseFont(FontData fontData) {
+		release(fonts, fontData.toString());
+	}
+
+	/**
+	 * Disposes all the resources that were not released.
+	 */
+	public void dispose() {
+		colors.values().forEach(color -> color.resource.dispose());
+		colors.clear();
+		fonts.values().forEach(font -> font.resource.dispose());
+		fonts.clear();
+	}
+
+	private static <K, R extends Resource> void release(Map<K, SharedResource<R>> resources, K key) {
+		SharedResource<R> sharedResource = resources.get(key);
+		if (sharedResource != null && --sharedResource.references == 0) {
+			resources.remove(key);
+			sharedResource.resource.dispose();
+		}
+	}
+
+	/**
+	 * Class associating a resource with the number of its users.
+	 */
+	private static final class SharedResource<R extends Resource> {
+
+		private final R resource;
+		private int references;
+
+		private SharedResource(R resource) {
+			this.resource = resource;
+		}
+	}
+}
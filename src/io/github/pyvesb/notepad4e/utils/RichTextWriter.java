@@ -0,0 +1,245 @@
+package io.github.pyvesb.notepad4e.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.eclipse.core.runtime.SubMonitor;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.StyleRange;
+
+/**
+ * Class converting the text, styles and bullets of a note to a markup language. The note is walked in a single pass,
+ * chunk by chunk: style ranges and bulleted lines are consumed in order alongside the text, so that the cost of the
+ * conversion is linear in the size of the note and no per-character structure is ever built. Subclasses only decide
+ * how lines and styled text are written.
+ * 
+ * @author Pyves
+ *
+ */
+abstract class RichTextWriter {
+
+	// Flags describing the style of a segment of text.
+	static final int BOLD = 1;
+	static final int ITALIC = 1 << 1;
+	static final int UNDERLINE = 1 << 2;
+	static final int STRIKEOUT = 1 << 3;
+
+	// Number of characters read from the note at once.
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	// Style of the text currently being written.
+	private int currentStyle;
+
+	/**
+	 * Converts a note.
+	 * 
+	 * @param snapshot
+	 * @param out
+	 * @param lineDelimiter delimiter written between lines, null to keep the ones of the note
+	 * @param monitor used to report progress, one unit per chunk
+	 * @return false if the conversion was cancelled, true otherwise
+	 * @throws IOException
+	 */
+	final boolean write(NoteSnapshot snapshot, Writer out, String lineDelimiter, SubMonitor monitor)
+			throws IOException {
+		CharSequence text = snapshot.getText();
+		StyleRange[] styles = snapshot.getStyles();
+		int[] bulletLines = snapshot.getBulletLines();
+		// Index of the first style range that does not end before the current offset.
+		int styleIndex = 0;
+		// Index of the first bulleted line that is not before the current line.
+		int bulletIndex = 0;
+		int line = 0;
+		boolean bulleted = bulletLines.length > 0 && bulletLines[0] == 0;
+		// Set when the current character is the line feed of a "\r\n" delimiter, which was already written.
+		boolean skipLineFeed = false;
+
+		writeStart(out);
+		startLine(out, bulleted, false);
+		for (int chunkStart = 0; chunkStart < text.length(); chunkStart += CHUNK_SIZE) {
+			if (monitor.isCanceled()) {
+				return false;
+			}
+			String chunk = text.subSequence(chunkStart, Math.min(text.length(), chunkStart + CHUNK_SIZE)).toString();
+			// Start of the text not written yet, relative to the chunk.
+			int segmentStart = 0;
+			for (int charIndex = 0; charIndex < chunk.length(); ++charIndex) {
+				int offset = chunkStart + charIndex;
+				char character = chunk.charAt(charIndex);
+				if (skipLineFeed) {
+					skipLineFeed = false;
+					segmentStart = charIndex + 1;
+				} else if (character == '\r' || character == '\n') {
+					writeSegment(out, chunk, chunkStart, segmentStart, charIndex, styles, styleIndex);
+					String delimiter = "\n";
+					if (character == '\r') {
+						// The line feed may belong to the next chunk.
+						skipLineFeed = offset + 1 < text.length() && text.charAt(offset + 1) == '\n';
+						delimiter = skipLineFeed ? "\r\n" : "\r";
+					}
+					++line;
+					while (bulletIndex < bulletLines.length && bulletLines[bulletIndex] < line) {
+						++bulletIndex;
+					}
+					boolean nextBulleted = bulletIndex < bulletLines.length && bulletLines[bulletIndex] == line;
+					finishLine(out, bulleted, nextBulleted, lineDelimiter == null ? delimiter : lineDelimiter);
+					startLine(out, nextBulleted, bulleted);
+					bulleted = nextBulleted;
+					segmentStart = charIndex + 1;
+				} else {
+					int previousStyleIndex = styleIndex;
+					while (styleIndex < styles.length && styles[styleIndex].start + styles[styleIndex].length <= offset) {
+						++styleIndex;
+					}
+					if (styleIndex != previousStyleIndex
+							|| styleIndex < styles.length && styles[styleIndex].start == offset) {
+						// Style boundary, the text before it has the previous style.
+						writeSegment(out, chunk, chunkStart, segmentStart, charIndex, styles, previousStyleIndex);
+						segmentStart = charIndex;
+					}
+				}
+			}
+			writeSegment(out, chunk, chunkStart, segmentStart, chunk.length(), styles, styleIndex);
+			monitor.worked(1);
+		}
+		finishLine(out, bulleted, false, null);
+		writeEnd(out);
+		return true;
+	}
+
+	/**
+	 * Writes the start of the document.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	protected abstract void writeStart(Writer out) throws IOException;
+
+	/**
+	 * Writes the end of the document.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	protected abstract void writeEnd(Writer out) throws IOException;
+
+	/**
+	 * Writes the start of a line.
+	 * 
+	 * @param out
+	 * @param bulleted whether the line has a bullet
+	 * @param previousBulleted whether the previous line has a bullet
+	 * @throws IOException
+	 */
+	protected abstract void startLine(Writer out, boolean bulleted, boolean previousBulleted) throws IOException;
+
+	/**
+	 * Writes the end of a line, followed by the line delimiter.
+	 * 
+	 * @param out
+	 * @param bulleted whether the line has a bullet
+	 * @param nextBulleted whether the next line has a bullet
+	 * @param lineDelimiter delimiter to write, null if this is the last line
+	 * @throws IOException
+	 */
+	protected abstract void endLine(Writer out, boolean bulleted, boolean nextBulleted, String lineDelimiter)
+			throws IOException;
+
+	/**
+	 * Writes the markup starting a style.
+	 * 
+	 * @param out
+	 * @param style combination of style flags, never 0
+	 * @throws IOException
+	 */
+	protected abstract void openStyle(Writer out, int style) throws IOException;
+
+	/**
+	 * Writes the markup ending a style.
+	 * 
+	 * @param out
+	 * @param style combination of style flags, never 0
+	 * @throws IOException
+	 */
+	protected abstract void closeStyle(Writer out, int style) throws IOException;
+
+	/**
+	 * Writes text, escaping it as needed. The text never contains line delimiters.
+	 * 
+	 * @param out
+	 * @param chunk
+	 * @param start
+	 * @param end
+	 * @throws IOException
+	 */
+	protected abstract void writeText(Writer out, String chunk, int start, int end) throws IOException;
+
+	/**
+	 * Writes a segment of text in which the style does not change.
+	 * 
+	 * @param out
+	 * @param chunk
+	 * @param chunkStart offset of the chunk in the note
+	 * @param start start of the segment in the chunk
+	 * @param end end of the segment in the chunk
+	 * @param styles
+	 * @param styleIndex index of the first style range that does not end before the segment
+	 * @throws IOException
+	 */
+	private void writeSegment(Writer out, String chunk, int chunkStart, int start, int end, StyleRange[] styles,
+			int styleIndex) throws IOException {
+		if (start >= end) {
+			return;
+		}
+		int style = 0;
+		// Segments never cross style boundaries, checking the first character is enough.
+		if (styleIndex < styles.length && styles[styleIndex].start <= chunkStart + start) {
+			style = toFlags(styles[styleIndex]);
+		}
+		if (style != currentStyle) {
+			if (currentStyle != 0) {
+				closeStyle(out, currentStyle);
+			}
+			if (style != 0) {
+				openStyle(out, style);
+			}
+			currentStyle = style;
+		}
+		writeText(out, chunk, start, end);
+	}
+
+	/**
+	 * Closes the current style and ends the line.
+	 * 
+	 * @param out
+	 * @param bulleted
+	 * @param nextBulleted
+	 * @param lineDelimiter delimiter to write, null if this is the last line
+	 * @throws IOException
+	 */
+	private void finishLine(Writer out, boolean bulleted, boolean nextBulleted, String lineDelimiter)
+			throws IOException {
+		if (currentStyle != 0) {
+			closeStyle(out, currentStyle);
+			currentStyle = 0;
+		}
+		endLine(out, bulleted, nextBulleted, lineDelimiter);
+	}
+
+	private static int toFlags(StyleRange style) {
+		int flags = 0;
+		if ((style.fontStyle & SWT.BOLD) != 0) {
+			flags |= BOLD;
+		}
+		if ((style.fontStyle & SWT.ITALIC) != 0) {
+			flags |= ITALIC;
+		}
+		if (style.underline) {
+			flags |= UNDERLINE;
+		}
+		if (style.strikeout) {
+			flags |= STRIKEOUT;
+		}
+		return flags;
+	}
+}
@@ -0,0 +1,232 @@
+package io.github.pyvesb.notepad4e.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+
+import io.github.pyvesb.notepad4e.Notepad4e;
+import io.github.pyvesb.notepad4e.strings.LocalStrings;
+import io.github.pyvesb.notepad4e.utils.NoteStore.IndexEntry;
+
+/**
+ * Class serialising the saves requested by all the views of the plugin. Requests are queued and written by a single
+ * job, so at most one write is in progress and one more is pending at any time. Requests made for the same store are
+ * merged while they wait, and are written as a single save whose index lists the notes of all the views attached to
+ * the store; bodies of notes still opened in a view are therefore never deleted because another view closed them.
+ * Likewise, journal segments are only deleted once they are covered by the saves of all the attached views.
+ * 
+ * @author Pyves
+ *
+ */
+public class SaveCoordinator {
+
+	// State of each store, in the order in which the stores were first used. Guarded by itself.
+	private final Map<NoteStore, StoreState> stores = new LinkedHashMap<>();
+
+	private final AbstractSaveJob saveJob = new AbstractSaveJob() {
+		@Override
+		protected void save() {
+			writePendingSaves();
+		}
+	};
+
+	/**
+	 * Records that a view uses a store. Until its first save, the view prevents journal segments from being deleted,
+	 * as they may hold modifications it recovered but did not save yet.
+	 * 
+	 * @param source object using the store, typically a view
+	 * @param noteStore
+	 */
+	public void attach(Object source, NoteStore noteStore) {
+		synchronized (stores) {
+			StoreState storeState = getStoreState(noteStore);
+			if (storeState.attachedSources.isEmpty()) {
+				// The new view starts from the saved index, which lists the notes of the views that were closed.
+				storeState.entries.clear();
+				storeState.searchSnapshots.clear();
+				storeState.coveredSegments.clear();
+			}
+			storeState.attachedSources.add(source);
+			storeState.coveredSegments.putIfAbsent(source, 0);
+		}
+	}
+
+	/**
+	 * Records that a view no longer uses any store, typically once it has saved for the last time. Its notes remain
+	 * in the index of the stores it used.
+	 * 
+	 * @param source
+	 */
+	public void detach(Object source) {
+		synchronized (stores) {
+			for (StoreState storeState : stores.values()) {
+				storeState.attachedSources.remove(source);
+			}
+		}
+	}
+
+	/**
+	 * Queues a save and schedules the save job if it is not already waiting to run.
+	 * 
+	 * @param source object requesting the save, typically a view
+	 * @param noteStore store in which to save
+	 * @param entries all the notes of the source, in order
+	 * @param snapshots contents of the notes that must be saved
+	 * @param searchSnapshot search index of the notes of the source, null if none
+	 * @param journalSegment last journal segment covering the modifications of the source
+	 */
+	public void requestSave(Object source, NoteStore noteStore, List<IndexEntry> entries, List<NoteSnapshot> snapshots,
+			SearchIndex.Snapshot searchSnapshot, int journalSegment) {
+		synchronized (stores) {
+			StoreState storeState = getStoreState(noteStore);
+			storeState.attachedSources.add(source);
+			storeState.entries.put(source, entries);
+			for (NoteSnapshot snapshot : snapshots) {
+				storeState.snapshots.put(snapshot.getId(), snapshot);
+			}
+			if (searchSnapshot != null) {
+				storeState.searchSnapshots.put(source, searchSnapshot);
+			}
+			storeState.coveredSegments.merge(source, journalSegment, Math::max);
+			storeState.savePending = true;
+		}
+		// Has no effect if the job is already waiting; if it is running, it will run once more when done.
+		saveJob.schedule();
+	}
+
+	/**
+	 * Writes all pending saves in the calling thread, after waiting for any write in progress. Used when the plugin's
+	 * state must be on disk before continuing, for instance on shutdown.
+	 */
+	public void flush() {
+		saveJob.saveNow();
+	}
+
+	private StoreState getStoreState(NoteStore noteStore) {
+		return stores.computeIfAbsent(noteStore, key -> new StoreState());
+	}
+
+	private void writePendingSaves() {
+		List<PendingSave> saves = new ArrayList<>();
+		synchronized (stores) {
+			for (Map.Entry<NoteStore, StoreState> store : stores.entrySet()) {
+				StoreState storeState = store.getValue();
+				if (storeState.savePending) {
+					saves.add(storeState.takePendingSave(store.getKey()));
+				}
+			}
+		}
+		for (PendingSave save : saves) {
+			try {
+				save.noteStore.save(save.entries, save.snapshots);
+				// Written once the notes are saved, so that the index matches the checksums of their bodies.
+				if (save.searchSnapshot != null) {
+					save.noteStore.writeSearchIndex(save.searchSnapshot.encode(save.noteStore));
+				}
+				save.noteStore.getJournal().compact(save.journalSegment);
+			} catch (IOException e) {
+				// The journal may now hold the only copy of the modifications that could not be saved.
+				save.noteStore.getJournal().disableCompaction();
+				requeue(save);
+				Notepad4e.getDefault().getLog()
+						.log(new Status(IStatus.ERROR, Notepad4e.PLUGIN_ID, LocalStrings.saveErrorMsg, e));
+			}
+		}
+	}
+
+	/**
+	 * Queues the snapshots of a save that could not be written again, so that they are written along with the next
+	 * save of the store; the views consider these notes saved and will not request them again. Snapshots queued since
+	 * the save was taken are more recent and are kept.
+	 * 
+	 * @param save
+	 */
+	private void requeue(PendingSave save) {
+		synchronized (stores) {
+			StoreState storeState = getStoreState(save.noteStore);
+			for (NoteSnapshot snapshot : save.snapshots) {
+				storeState.snapshots.putIfAbsent(snapshot.getId(), snapshot);
+			}
+			// Not rescheduled, so that a failing disk is not retried in a loop; the next request or flush retries.
+			storeState.savePending = true;
+		}
+	}
+
+	/**
+	 * Class keeping track of the latest requests made for a store by each view.
+	 */
+	private static final class StoreState {
+
+		// Latest notes of each view, including the views that were closed since.
+		private final Map<Object, List<IndexEntry>> entries = new LinkedHashMap<>();
+		// Latest search index of each view.
+		private final Map<Object, SearchIndex.Snapshot> searchSnapshots = new LinkedHashMap<>();
+		// Last journal segment covered by the saves of each view.
+		private final Map<Object, Integer> coveredSegments = new HashMap<>();
+		private final Set<Object> attachedSources = new HashSet<>();
+		// Latest snapshot of each note not written yet, by identifier.
+		private final Map<String, NoteSnapshot> snapshots = new LinkedHashMap<>();
+		private boolean savePending;
+
+		/**
+		 * Merges the requests of all views into a single save and clears the snapshots waiting to be written.
+		 * 
+		 * @param noteStore
+		 * @return the save to write
+		 */
+		private PendingSave takePendingSave(NoteStore noteStore) {
+			List<IndexEntry> mergedEntries = new ArrayList<>();
+			Set<String> ids = new HashSet<>();
+			for (List<IndexEntry> sourceEntries : entries.values()) {
+				for (IndexEntry entry : sourceEntries) {
+					if (ids.add(entry.getId())) {
+						mergedEntries.add(entry);
+					}
+				}
+			}
+			// Segments may only be deleted once none of the attached views has modifications left in them.
+			int journalSegment = Integer.MAX_VALUE;
+			for (Object source : attachedSources) {
+				journalSegment = Math.min(journalSegment, coveredSegments.get(source));
+			}
+			if (journalSegment == Integer.MAX_VALUE) {
+				journalSegment = coveredSegments.values().stream().mapToInt(Integer::intValue).max().orElse(0);
+			}
+			PendingSave save = new PendingSave(noteStore, mergedEntries, new ArrayList<>(snapshots.values()),
+					searchSnapshots.isEmpty() ? null : SearchIndex.Snapshot.merge(searchSnapshots.values()),
+					journalSegment);
+			snapshots.clear();
+			savePending = false;
+			return save;
+		}
+	}
+
+	/**
+	 * Class containing a save to write, merged from the requests made for a store.
+	 */
+	private static final class PendingSave {
+
+		private final NoteStore noteStore;
+		private final List<IndexEntry> entries;
+		private final List<NoteSnapshot> snapshots;
+		private final SearchIndex.Snapshot searchSnapshot;
+		private final int journalSegment;
+
+		private PendingSave(NoteStore noteStore, List<IndexEntry> entries, List<NoteSnapshot> snapshots,
+				SearchIndex.Snapshot searchSnapshot, int journalSegment) {
+			this.noteStore = noteStore;
+			this.entries = entries;
+			this.snapshots = snapshots;
+			this.searchSnapshot = searchSnapshot;
+			this.journalSegment = journalSegment;
+		}
+	}
+}
@@ -0,0 +1,526 @@
+package io.github.pyvesb.notepad4e.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.eclipse.swt.custom.StyledTextContent;
+import org.eclipse.swt.custom.TextChangeListener;
+import org.eclipse.swt.custom.TextChangedEvent;
+import org.eclipse.swt.custom.TextChangingEvent;
+
+/**
+ * Class maintaining an inverted index of the words contained in all notes, used to search across notes without
+ * reading their contents. The index is updated incrementally from the content changes of each note: only the words
+ * surrounding a modification are removed and added again. Words are case insensitive and made of letters and digits.
+ * 
+ * @author Pyves
+ *
+ */
+public class SearchIndex {
+
+	private static final int FORMAT_VERSION = 1;
+	// Longer words are truncated, both when indexing and searching.
+	private static final int MAX_TOKEN_LENGTH = 64;
+	// Number of characters of a note read at once when looking for an occurrence of a query.
+	private static final int SEARCH_CHUNK_SIZE = 65536;
+
+	// Identifiers of the notes containing each word.
+	private final TreeMap<String, Set<String>> postings = new TreeMap<>();
+	// Words of each indexed note.
+	private final Map<String, NoteTokens> notes = new HashMap<>();
+
+	/**
+	 * Indicates whether the words of a note are in the index.
+	 * 
+	 * @param id
+	 * @return true if the note is indexed, false otherwise
+	 */
+	public boolean contains(String id) {
+		return notes.containsKey(id);
+	}
+
+	/**
+	 * Indexes a note given its full text, replacing any previous words of the note.
+	 * 
+	 * @param id
+	 * @param text
+	 */
+	public void indexText(String id, CharSequence text) {
+		remove(id);
+		NoteTokens noteTokens = new NoteTokens();
+		notes.put(id, noteTokens);
+		addTokens(id, noteTokens, text);
+	}
+
+	/**
+	 * Counts the words of a text without modifying the index, so that notes can be tokenised outside of the UI thread
+	 * and added later on.
+	 * 
+	 * @param text
+	 * @return the words of the text
+	 */
+	public static NoteTokens tokenize(CharSequence text) {
+		NoteTokens noteTokens = new NoteTokens();
+		forEachToken(text, 0, text.length(), token -> {
+			int[] count = noteTokens.counts.get(token);
+			if (count == null) {
+				noteTokens.counts.put(token, new int[] { 1 });
+			} else {
+				++count[0];
+			}
+		});
+		return noteTokens;
+	}
+
+	/**
+	 * Adds the words of a note tokenised by tokenize. Does nothing if the note was indexed in the meantime, for instance
+	 * because it was displayed.
+	 * 
+	 * @param id
+	 * @param noteTokens
+	 */
+	public void add(String id, NoteTokens noteTokens) {
+		if (!contains(id)) {
+			notes.put(id, noteTokens);
+			for (String token : noteTokens.counts.keySet()) {
+				postings.computeIfAbsent(token, key -> new HashSet<>()).add(id);
+			}
+		}
+	}
+
+	/**
+	 * Keeps the index up to date with the content of a note. The note is indexed first if it is not yet in the index.
+	 * 
+	 * @param id
+	 * @param content
+	 */
+	public void attach(String id, StyledTextContent content) {
+		if (!contains(id)) {
+			indexText(id, content.getTextRange(0, content.getCharCount()));
+		}
+		content.addTextChangeListener(new ContentIndexer(id, content));
+	}
+
+	/**
+	 * Removes the words of a note from the index, for instance when it is closed.
+	 * 
+	 * @param id
+	 */
+	public void remove(String id) {
+		NoteTokens noteTokens = notes.remove(id);
+		if (noteTokens != null) {
+			for (String token : noteTokens.counts.keySet()) {
+				removePosting(token, id);
+			}
+		}
+	}
+
+	/**
+	 * Finds the notes containing all the words of a query. The last word of the query may be incomplete and matches any
+	 * word it is a prefix of.
+	 * 
+	 * @param query
+	 * @return matching notes, the ones with the most occurrences first
+	 */
+	public List<Result> search(String query) {
+		List<String> queryTokens = new ArrayList<>();
+		forEachToken(query, 0, query.length(), queryTokens::add);
+		if (queryTokens.isEmpty()) {
+			return Collections.emptyList();
+		}
+		Map<String, Integer> scores = null;
+		for (int tokenIndex = 0; tokenIndex < queryTokens.size(); ++tokenIndex) {
+			String queryToken = queryTokens.get(tokenIndex);
+			Collection<String> matchingTokens;
+			if (tokenIndex == queryTokens.size() - 1) {
+				matchingTokens = postings.subMap(queryToken, queryToken + Character.MAX_VALUE).keySet();
+			} else {
+				matchingTokens = postings.containsKey(queryToken) ? Collections.singleton(queryToken)
+						: Collections.emptySet();
+			}
+			Map<String, Integer> tokenScores = new HashMap<>();
+			for (String token : matchingTokens) {
+				for (String id : postings.get(token)) {
+					tokenScores.merge(id, notes.get(id).counts.get(token)[0], Integer::sum);
+				}
+			}
+			if (scores != null) {
+				// All words of the query must be present.
+				tokenScores.keySet().retainAll(scores.keySet());
+				for (Map.Entry<String, Integer> tokenScore : tokenScores.entrySet()) {
+					tokenScore.setValue(tokenScore.getValue() + scores.get(tokenScore.getKey()));
+				}
+			}
+			scores = tokenScores;
+		}
+		List<Result> results = new ArrayList<>(scores.size());
+		for (Map.Entry<String, Integer> score : scores.entrySet()) {
+			results.add(new Result(score.getKey(), score.getValue()));
+		}
+		results.sort((result1, result2) -> Integer.compare(result2.occurrences, result1.occurrences));
+		return results;
+	}
+
+	/**
+	 * Finds the first occurrence of a query in the content of a note, starting on a word boundary. If the whole query is
+	 * not found, the first occurrence of its first word is returned. The content is compared character by character
+	 * without being converted, so the returned offsets are offsets in the content itself.
+	 * 
+	 * @param content
+	 * @param query
+	 * @return offset and length of the occurrence, or null if none was found
+	 */
+	public static int[] findOccurrence(StyledTextContent content, String query) {
+		String trimmedQuery = query.trim();
+		int offset = findWordStart(content, trimmedQuery);
+		if (offset >= 0) {
+			return new int[] { offset, trimmedQuery.length() };
+		}
+		String firstWord = getFirstWord(trimmedQuery);
+		offset = findWordStart(content, firstWord);
+		if (offset >= 0) {
+			return new int[] { offset, firstWord.length() };
+		}
+		return null;
+	}
+
+	/**
+	 * Takes a copy of the index that can be written outside of the UI thread. Only notes modified since the last
+	 * snapshot are encoded again.
+	 * 
+	 * @return snapshot of the index
+	 */
+	public Snapshot createSnapshot() {
+		Map<String, byte[]> encodedNotes = new HashMap<>(notes.size());
+		for (Map.Entry<String, NoteTokens> note : notes.entrySet()) {
+			encodedNotes.put(note.getKey(), note.getValue().encode());
+		}
+		return new Snapshot(encodedNotes);
+	}
+
+	/**
+	 * Loads the notes of a previously saved index. Notes already in the index, not in the provided set or whose
+	 * contents changed since the index was saved are ignored.
+	 * 
+	 * @param bytes saved index
+	 * @param ids notes to load
+	 * @param noteStore store used to check whether notes changed
+	 * @throws IOException
+	 */
+	public void load(byte[] bytes, Set<String> ids, NoteStore noteStore) throws IOException {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			int version = in.readInt();
+			if (version != FORMAT_VERSION) {
+				throw new IOException("Unsupported search index version " + version);
+			}
+			int numOfNotes = in.readInt();
+			for (int noteIndex = 0; noteIndex < numOfNotes; ++noteIndex) {
+				String id = in.readUTF();
+				long checksum = in.readLong();
+				byte[] encodedTokens = new byte[in.readInt()];
+				in.readFully(encodedTokens);
+				Long currentChecksum = noteStore.getChecksum(id);
+				if (ids.contains(id) && currentChecksum != null && currentChecksum == checksum) {
+					add(id, NoteTokens.decode(encodedTokens));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Calls the consumer for each word of a region of text, in lower case.
+	 * 
+	 * @param text
+	 * @param start
+	 * @param end
+	 * @param tokenConsumer
+	 */
+	private static void forEachToken(CharSequence text, int start, int end, TokenConsumer tokenConsumer) {
+		int tokenStart = -1;
+		for (int charIndex = start; charIndex <= end; ++charIndex) {
+			boolean wordCharacter = charIndex < end && Character.isLetterOrDigit(text.charAt(charIndex));
+			if (wordCharacter && tokenStart < 0) {
+				tokenStart = charIndex;
+			} else if (!wordCharacter && tokenStart >= 0) {
+				int tokenEnd = Math.min(charIndex, tokenStart + MAX_TOKEN_LENGTH);
+				tokenConsumer.accept(text.subSequence(tokenStart, tokenEnd).toString().toLowerCase(Locale.ROOT));
+				tokenStart = -1;
+			}
+		}
+	}
+
+	private static int findWordStart(StyledTextContent content, String word) {
+		if (word.isEmpty()) {
+			return -1;
+		}
+		int charCount = content.getCharCount();
+		for (int chunkStart = 0; chunkStart + word.length() <= charCount; chunkStart += SEARCH_CHUNK_SIZE) {
+			// Chunks start one character early to check word boundaries and overlap to find words spanning two chunks.
+			int rangeStart = Math.max(chunkStart - 1, 0);
+			int rangeEnd = Math.min(chunkStart + SEARCH_CHUNK_SIZE + word.length() - 1, charCount);
+			String chunk = content.getTextRange(rangeStart, rangeEnd - rangeStart);
+			for (int index = chunkStart - rangeStart; index + word.length() <= chunk.length(); ++index) {
+				if ((index == 0 || !Character.isLetterOrDigit(chunk.charAt(index - 1)))
+						&& chunk.regionMatches(true, index, word, 0, word.length())) {
+					return rangeStart + index;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private static String getFirstWord(String text) {
+		int start = 0;
+		while (start < text.length() && !Character.isLetterOrDigit(text.charAt(start))) {
+			++start;
+		}
+		int end = start;
+		while (end < text.length() && Character.isLetterOrDigit(text.charAt(end))) {
+			++end;
+		}
+		return text.substring(start, end);
+	}
+
+	private void addTokens(String id, NoteTokens noteTokens, CharSequence text) {
+		forEachToken(text, 0, text.length(), token -> {
+			int[] count = noteTokens.counts.get(token);
+			if (count == null) {
+				noteTokens.counts.put(token, new int[] { 1 });
+				postings.computeIfAbsent(token, key -> new HashSet<>()).add(id);
+			} else {
+				++count[0];
+			}
+		});
+		noteTokens.encoded = null;
+	}
+
+	private void removeTokens(String id, NoteTokens noteTokens, CharSequence text) {
+		forEachToken(text, 0, text.length(), token -> {
+			int[] count = noteTokens.counts.get(token);
+			if (count != null && --count[0] == 0) {
+				noteTokens.counts.remove(token);
+				removePosting(token, id);
+			}
+		});
+		noteTokens.encoded = null;
+	}
+
+	private void removePosting(String token, String id) {
+		Set<String> ids = postings.get(token);
+		if (ids != null) {
+			ids.remove(id);
+			if (ids.isEmpty()) {
+				postings.remove(token);
+			}
+		}
+	}
+
+	/**
+	 * Functional interface receiving the words of a text.
+	 * 
+	 * @author Pyves
+	 *
+	 */
+	private interface TokenConsumer {
+
+		void accept(String token);
+	}
+
+	/**
+	 * Class listening to the changes of the content of a note. The words overlapping the replaced region are removed
+	 * from the index before the change, and the words of the new region are added once the change is done.
+	 * 
+	 * @author Pyves
+	 *
+	 */
+	private final class ContentIndexer implements TextChangeListener {
+
+		private final String id;
+		private final StyledTextContent content;
+		// Region, expanded to word boundaries, to index again once the pending change is done.
+		private int changeStart;
+		private int changeEnd;
+
+		ContentIndexer(String id, StyledTextContent content) {
+			this.id = id;
+			this.content = content;
+		}
+
+		@Override
+		public void textChanging(TextChangingEvent event) {
+			NoteTokens noteTokens = notes.get(id);
+			if (noteTokens == null) {
+				return;
+			}
+			changeStart = event.start;
+			while (changeStart > 0 && Character.isLetterOrDigit(content.getTextRange(changeStart - 1, 1).charAt(0))) {
+				--changeStart;
+			}
+			int oldEnd = event.start + event.replaceCharCount;
+			int charCount = content.getCharCount();
+			while (oldEnd < charCount && Character.isLetterOrDigit(content.getTextRange(oldEnd, 1).charAt(0))) {
+				++oldEnd;
+			}
+			removeTokens(id, noteTokens, content.getTextRange(changeStart, oldEnd - changeStart));
+			changeEnd = oldEnd - event.replaceCharCount + event.newCharCount;
+		}
+
+		@Override
+		public void textChanged(TextChangedEvent event) {
+			NoteTokens noteTokens = notes.get(id);
+			if (noteTokens != null) {
+				addTokens(id, noteTokens, content.getTextRange(changeStart, changeEnd - changeStart));
+			}
+		}
+
+		@Override
+		public void textSet(TextChangedEvent event) {
+			if (contains(id)) {
+				indexText(id, content.getTextRange(0, content.getCharCount()));
+			}
+		}
+	}
+
+	/**
+	 * Class containing the number of occurrences of each word of a note. Instances are only modified by the index, or
+	 * by tokenize before being added to the index.
+	 * 
+	 * @author Pyves
+	 *
+	 */
+	public static final class NoteTokens {
+
+		// Mutable counts, to avoid boxing when updating them.
+		final Map<String, int[]> counts = new HashMap<>();
+		// Cached encoded form of the counts, null if they changed since last encoded.
+		byte[] encoded;
+
+		byte[] encode() {
+			if (encoded == null) {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 * counts.size() + 4);
+				try (DataOutputStream out = new DataOutputStream(bytes)) {
+					out.writeInt(counts.size());
+					for (Map.Entry<String, int[]> count : counts.entrySet()) {
+						out.writeUTF(count.getKey());
+						out.writeInt(count.getValue()[0]);
+					}
+				} catch (IOException e) {
+					// Not thrown when writing to a byte array.
+					throw new IllegalStateException(e);
+				}
+				encoded = bytes.toByteArray();
+			}
+			return encoded;
+		}
+
+		static NoteTokens decode(byte[] encoded) throws IOException {
+			NoteTokens noteTokens = new NoteTokens();
+			try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded))) {
+				int numOfTokens = in.readInt();
+				for (int tokenIndex = 0; tokenIndex < numOfTokens; ++tokenIndex) {
+					noteTokens.counts.put(in.readUTF(), new int[] { in.readInt() });
+				}
+			}
+			noteTokens.encoded = encoded;
+			return noteTokens;
+		}
+	}
+
+	/**
+	 * Class describing a note matching a query.
+	 * 
+	 * @author Pyves
+	 *
+	 */
+	public static final class Result {
+
+		private final String id;
+		private final int occurrences;
+
+		Result(String id, int occurrences) {
+			this.id = id;
+			this.occurrences = occurrences;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public int getOccurrences() {
+			return occurrences;
+		}
+	}
+
+	/**
+	 * Class representing an immutable copy of the index, which can be written on any thread.
+	 * 
+	 * @author Pyves
+	 *
+	 */
+	public static final class Snapshot {
+
+		private final Map<String, byte[]> encodedNotes;
+
+		Snapshot(Map<String, byte[]> encodedNotes) {
+			this.encodedNotes = encodedNotes;
+		}
+
+		/**
+		 * Merges the indexes of several views, for instance to save them in the same store.
+		 * 
+		 * @param snapshots
+		 * @return snapshot containing the notes of all the given snapshots
+		 */
+		public static Snapshot merge(Collection<Snapshot> snapshots) {
+			Map<String, byte[]> encodedNotes = new HashMap<>();
+			for (Snapshot snapshot : snapshots) {
+				encodedNotes.putAll(snapshot.encodedNotes);
+			}
+			return new Snapshot(encodedNotes);
+		}
+
+		/**
+		 * Encodes the index. Each note is associated with the checksum of its body in the store, notes without a body
+		 * are left out as their contents cannot be checked when loading the index.
+		 * 
+		 * @param noteStore
+		 * @return the encoded index
+		 * @throws IOException
+		 */
+		public byte[] encode(NoteStore noteStore) throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (DataOutputStream out = new DataOutputStream(bytes)) {
+				out.writeInt(FORMAT_VERSION);
+				Map<String, Long> checksums = new HashMap<>(encodedNotes.size());
+				for (String id : encodedNotes.keySet()) {
+					Long checksum = noteStore.getChecksum(id);
+					if (checksum != null) {
+						checksums.put(id, checksum);
+					}
+				}
+				out.writeInt(checksums.size());
+				for (Map.Entry<String, Long> checksum : checksums.entrySet()) {
+					byte[] encodedTokens = encodedNotes.get(checksum.getKey());
+					out.writeUTF(checksum.getKey());
+					out.writeLong(checksum.getValue());
+					out.writeInt(encodedTokens.length);
+					out.write(encodedTokens);
+				}
+			}
+			return bytes.toByteArray();
+		}
+	}
+}
@@ -43,6 +43,10 @@ public class ShortcutHandler extends AbstractHandler {
 			notepadView.addNewNote();
 		} else if (action == NotepadAction.CLOSE_NOTE) {
 			notepadView.closeCurrentSelection();
+		} else if (action == NotepadAction.SEARCH_NOTES) {
+			notepadView.openSearchDialog();
+		} else if (action == NotepadAction.QUICK_SWITCH) {
+			notepadView.openQuickSwitchDialog();
 		} else {
 			Note selectedNote = notepadView.getSelectedNote();
 			if (selectedNote != null) {
@@ -0,0 +1,264 @@
+package io.github.pyvesb.notepad4e.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Class keeping track of the titles of the notes of a view, so that new notes can be given an unused title and notes
+ * can be found by title without going through all the tabs. Several notes can share the same title, the number of
+ * notes using each title is therefore recorded. Lower case titles are also indexed by trigrams, so that the titles
+ * containing a query are found by intersecting a few small sets rather than by scanning every title.
+ * 
+ * @author Pyves
+ *
+ */
+public class TitleIndex {
+
+	private static final int GRAM_LENGTH = 3;
+
+	// Number of notes using each title.
+	private final Map<String, Integer> titleCounts = new HashMap<>();
+	// Title of each note.
+	private final Map<String, String> titles = new HashMap<>();
+	// Lower case title of each note.
+	private final Map<String, String> lowerCaseTitles = new HashMap<>();
+	// Notes whose lower case title contains each trigram.
+	private final Map<String, Set<String>> trigramIds = new HashMap<>();
+
+	/**
+	 * Records the title of a note.
+	 * 
+	 * @param id
+	 * @param title
+	 */
+	public void add(String id, String title) {
+		remove(id);
+		titleCounts.merge(title, 1, Integer::sum);
+		titles.put(id, title);
+		String lowerCaseTitle = title.toLowerCase(Locale.ROOT);
+		lowerCaseTitles.put(id, lowerCaseTitle);
+		for (String trigram : getTrigrams(lowerCaseTitle)) {
+			trigramIds.computeIfAbsent(trigram, key -> new HashSet<>()).add(id);
+		}
+	}
+
+	/**
+	 * Records that a note no longer exists, for instance when it is closed.
+	 * 
+	 * @param id
+	 */
+	public void remove(String id) {
+		String title = titles.remove(id);
+		if (title == null) {
+			return;
+		}
+		titleCounts.computeIfPresent(title, (key, count) -> count == 1 ? null : count - 1);
+		for (String trigram : getTrigrams(lowerCaseTitles.remove(id))) {
+			Set<String> ids = trigramIds.get(trigram);
+			ids.remove(id);
+			if (ids.isEmpty()) {
+				trigramIds.remove(trigram);
+			}
+		}
+	}
+
+	/**
+	 * Records that a note was renamed.
+	 * 
+	 * @param id
+	 * @param newTitle
+	 */
+	public void rename(String id, String newTitle) {
+		add(id, newTitle);
+	}
+
+	/**
+	 * Returns the title of a note.
+	 * 
+	 * @param id
+	 * @return the title, or null if the note is not in the index
+	 */
+	public String getTitle(String id) {
+		return titles.get(id);
+	}
+
+	/**
+	 * Indicates whether a note uses exactly the given title.
+	 * 
+	 * @param title
+	 * @return true if the title is used, false otherwise
+	 */
+	public boolean contains(String title) {
+		return titleCounts.containsKey(title);
+	}
+
+	/**
+	 * Returns the first unused title made of the prefix followed by a number, for instance "Note 3". Each candidate is
+	 * a single lookup, and candidates are only skipped for titles that are actually in use with a number greater than
+	 * or equal to the first one.
+	 * 
+	 * @param prefix
+	 * @param firstNumber number to try first
+	 * @return an unused title
+	 */
+	public String allocate(String prefix, int firstNumber) {
+		for (int number = firstNumber;; ++number) {
+			String title = prefix + " " + number;
+			if (!contains(title)) {
+				return title;
+			}
+		}
+	}
+
+	/**
+	 * Finds the notes whose title matches a query, ignoring case. Titles starting with the query come first, followed
+	 * by titles containing a word starting with the query, titles containing the query and finally titles containing
+	 * the characters of the query in the same order, for instance "ntpd" for "Notepad". Titles containing the query
+	 * are looked up in the trigram index; the remaining titles are only scanned if there are not enough of them.
+	 * 
+	 * @param query
+	 * @param maxResults
+	 * @return IDs of the matching notes, best matches first
+	 */
+	public List<String> search(String query, int maxResults) {
+		String lowerCaseQuery = query.trim().toLowerCase(Locale.ROOT);
+		if (lowerCaseQuery.isEmpty()) {
+			return Collections.emptyList();
+		}
+		// Best matches found so far, worst one first so that it can be replaced by better ones.
+		PriorityQueue<Match> matches = new PriorityQueue<>(maxResults + 1, Collections.reverseOrder());
+		Set<String> substringIds = getSubstringCandidates(lowerCaseQuery);
+		int substringMatchCount = 0;
+		for (String id : substringIds) {
+			String lowerCaseTitle = lowerCaseTitles.get(id);
+			int matchIndex = lowerCaseTitle.indexOf(lowerCaseQuery);
+			if (matchIndex >= 0) {
+				int score = matchIndex == 0 ? 0 : isWordStart(lowerCaseTitle, lowerCaseQuery) ? 1 : 2;
+				addMatch(matches, new Match(id, lowerCaseTitle, score), maxResults);
+				++substringMatchCount;
+			}
+		}
+		if (substringMatchCount < maxResults) {
+			for (Map.Entry<String, String> lowerCaseTitle : lowerCaseTitles.entrySet()) {
+				if (lowerCaseTitle.getValue().indexOf(lowerCaseQuery) < 0
+						&& isSubsequence(lowerCaseQuery, lowerCaseTitle.getValue())) {
+					addMatch(matches, new Match(lowerCaseTitle.getKey(), lowerCaseTitle.getValue(), 3), maxResults);
+				}
+			}
+		}
+		String[] ids = new String[matches.size()];
+		for (int idIndex = ids.length - 1; idIndex >= 0; --idIndex) {
+			ids[idIndex] = matches.poll().id;
+		}
+		return Arrays.asList(ids);
+	}
+
+	private static void addMatch(PriorityQueue<Match> matches, Match match, int maxResults) {
+		matches.add(match);
+		if (matches.size() > maxResults) {
+			matches.poll();
+		}
+	}
+
+	/**
+	 * Returns the notes whose title may contain the query, in other words all the trigrams of the query. Queries
+	 * shorter than a trigram cannot be looked up, all notes are then returned.
+	 * 
+	 * @param lowerCaseQuery
+	 * @return IDs of the candidate notes
+	 */
+	private Set<String> getSubstringCandidates(String lowerCaseQuery) {
+		if (lowerCaseQuery.length() < GRAM_LENGTH) {
+			return titles.keySet();
+		}
+		List<Set<String>> idSets = new ArrayList<>();
+		for (String trigram : getTrigrams(lowerCaseQuery)) {
+			Set<String> ids = trigramIds.get(trigram);
+			if (ids == null) {
+				return Collections.emptySet();
+			}
+			idSets.add(ids);
+		}
+		// Intersect starting with the smallest set, which bounds the number of checked notes.
+		idSets.sort(Comparator.comparingInt(Set::size));
+		Set<String> candidates = new HashSet<>(idSets.get(0));
+		for (int setIndex = 1; setIndex < idSets.size() && !candidates.isEmpty(); ++setIndex) {
+			candidates.retainAll(idSets.get(setIndex));
+		}
+		return candidates;
+	}
+
+	private static Set<String> getTrigrams(String text) {
+		Set<String> trigrams = new HashSet<>();
+		for (int charIndex = 0; charIndex + GRAM_LENGTH <= text.length(); ++charIndex) {
+			trigrams.add(text.substring(charIndex, charIndex + GRAM_LENGTH));
+		}
+		return trigrams;
+	}
+
+	private static boolean isWordStart(String text, String query) {
+		for (int matchIndex = text.indexOf(query); matchIndex >= 0; matchIndex = text.indexOf(query, matchIndex + 1)) {
+			if (matchIndex == 0 || !Character.isLetterOrDigit(text.charAt(matchIndex - 1))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isSubsequence(String query, String text) {
+		int textIndex = 0;
+		for (int queryIndex = 0; queryIndex < query.length(); ++queryIndex) {
+			char character = query.charAt(queryIndex);
+			if (character == ' ') {
+				continue;
+			}
+			textIndex = text.indexOf(character, textIndex);
+			if (textIndex < 0) {
+				return false;
+			}
+			++textIndex;
+		}
+		return true;
+	}
+
+	/**
+	 * Class representing a note matching a query. Matches are ordered from best to worst; among equally good matches,
+	 * shorter titles are closer to the query.
+	 * 
+	 * @author Pyves
+	 *
+	 */
+	private static final class Match implements Comparable<Match> {
+
+		private final String id;
+		private final String lowerCaseTitle;
+		// 0 for the best matches.
+		private final int score;
+
+		Match(String id, String lowerCaseTitle, int score) {
+			this.id = id;
+			this.lowerCaseTitle = lowerCaseTitle;
+			this.score = score;
+		}
+
+		@Override
+		public int compareTo(Match other) {
+			if (score != other.score) {
+				return Integer.compare(score, other.score);
+			}
+			if (lowerCaseTitle.length() != other.lowerCaseTitle.length()) {
+				return Integer.compare(lowerCaseTitle.length(), other.lowerCaseTitle.length());
+			}
+			return lowerCaseTitle.compareTo(other.lowerCaseTitle);
+		}
+	}
+}
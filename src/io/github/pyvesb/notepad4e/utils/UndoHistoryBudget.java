@@ -0,0 +1,105 @@
+package io.github.pyvesb.notepad4e.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+
+import io.github.pyvesb.notepad4e.Notepad4e;
+import io.github.pyvesb.notepad4e.preferences.Preferences;
+
+/**
+ * Class limiting the memory used by the undo histories of all notes. When the limit defined in the plugin's
+ * preferences is exceeded, the oldest changes are discarded, starting with the notes that were least recently edited.
+ * 
+ * @author Pyves
+ *
+ */
+public class UndoHistoryBudget implements IPreferenceChangeListener {
+
+	private static final long BYTES_PER_MEGABYTE = 1024L * 1024L;
+
+	// User defined preferences.
+	private final IEclipsePreferences preferences;
+	// Managers with a non-empty history, from least to most recently edited.
+	private final Set<UndoRedoManager> managers = new LinkedHashSet<>();
+	// Estimated memory used by all the histories.
+	private long usedBytes;
+	private long limitBytes;
+
+	/**
+	 * Constructor. Reads the memory limit from the plugin's preferences and listens to its changes.
+	 */
+	public UndoHistoryBudget() {
+		preferences = InstanceScope.INSTANCE.getNode(Notepad4e.PLUGIN_ID);
+		preferences.addPreferenceChangeListener(this);
+		updateLimit();
+	}
+
+	/**
+	 * Unregisters listeners.
+	 */
+	public void dispose() {
+		preferences.removePreferenceChangeListener(this);
+	}
+
+	@Override
+	public void preferenceChange(PreferenceChangeEvent event) {
+		if (Preferences.UNDO_MEMORY_LIMIT.equals(event.getKey())) {
+			updateLimit();
+			enforceLimit();
+		}
+	}
+
+	/**
+	 * Marks a manager as the most recently edited one.
+	 * 
+	 * @param manager
+	 */
+	void touch(UndoRedoManager manager) {
+		managers.remove(manager);
+		managers.add(manager);
+	}
+
+	/**
+	 * Stops tracking a manager, for instance when its note is disposed.
+	 * 
+	 * @param manager
+	 * @param managerBytes memory used by the history of the manager
+	 */
+	void remove(UndoRedoManager manager, long managerBytes) {
+		managers.remove(manager);
+		usedBytes -= managerBytes;
+	}
+
+	/**
+	 * Updates the memory used by all the histories.
+	 * 
+	 * @param deltaBytes
+	 */
+	void sizeChanged(long deltaBytes) {
+		usedBytes += deltaBytes;
+	}
+
+	/**
+	 * Discards changes from the least recently edited managers until the memory limit is respected.
+	 */
+	void enforceLimit() {
+		Iterator<UndoRedoManager> managerIterator = managers.iterator();
+		while (usedBytes > limitBytes && managerIterator.hasNext()) {
+			UndoRedoManager manager = managerIterator.next();
+			while (usedBytes > limitBytes && manager.discardOldestChange()) {
+				// Keep discarding changes of this manager.
+			}
+		}
+	}
+
+	private void updateLimit() {
+		limitBytes = BYTES_PER_MEGABYTE
+				* preferences.getInt(Preferences.UNDO_MEMORY_LIMIT, Preferences.UNDO_MEMORY_LIMIT_DEFAULT);
+	}
+}
@@ -1,28 +1,38 @@
 package io.github.pyvesb.notepad4e.utils;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.List;
 
 import org.eclipse.swt.custom.StyleRange;
 
+import io.github.pyvesb.notepad4e.Notepad4e;
 import io.github.pyvesb.notepad4e.views.Note;
 
 /**
- * Class in charge of handling the undo and redo actions of a note.
+ * Class in charge of handling the undo and redo actions of a note. Instead of copying the whole note, only the edited
+ * regions are recorded: replaced text, as well as styles and bullets before and after each modification. The memory
+ * used by the history is limited by a budget shared with the managers of all other notes.
  * 
  * @author Pyves
  *
  */
 public class UndoRedoManager {
 
-	// Used to prevent the size of undo and deques queues from growing indefinitely.
-	private static final int MAX_DEQUE_SIZES = 200;
-
 	// Reference to the note this manager is handling.
 	private final Note note;
-	// Deques used to store note states.
-	private final Deque<NoteState> undoDeque = new ArrayDeque<>(MAX_DEQUE_SIZES);
-	private final Deque<NoteState> redoDeque = new ArrayDeque<>(MAX_DEQUE_SIZES);
+	// Budget limiting the memory used by the histories of all notes.
+	private final UndoHistoryBudget budget;
+	// Deques used to store the changes made to the note.
+	private final Deque<Change> undoDeque = new ArrayDeque<>();
+	private final Deque<Change> redoDeque = new ArrayDeque<>();
+	// Estimated memory used by the changes in both deques.
+	private long sizeInBytes;
+	// Change to which new edits are appended, null if the next edit must start a new change.
+	private Change currentChange;
+	// Edit started but not yet completed, i.e. the note is being modified.
+	private Edit pendingEdit;
 
 	/**
 	 * Constructor, connects the note and the new manager instance.
@@ -31,153 +41,314 @@ public class UndoRedoManager {
 	 */
 	public UndoRedoManager(Note note) {
 		this.note = note;
+		budget = Notepad4e.getDefault().getUndoHistoryBudget();
 	}
-	
+
 	/**
-	 * Saves a note's state to allow undo and redo operations to be performed.
+	 * Discards the history and releases its share of the memory budget.
 	 */
-	public void saveNoteState() {
-		// Empty redo deque.
+	public void dispose() {
+		undoDeque.clear();
 		redoDeque.clear();
+		currentChange = null;
+		pendingEdit = null;
+		budget.remove(this, sizeInBytes);
+		sizeInBytes = 0;
+	}
 
-		undoDeque.push(new NoteState(note.getText(), note.getCaretOffset(), note.getStyleRanges(), getBulletLineMapping()));
+	/**
+	 * Records the state of the region of text about to be replaced. Consecutive characters are grouped in a single
+	 * change, a new change is started when a new word is typed or when overwriting or pasting text.
+	 * 
+	 * @param start
+	 * @param end
+	 * @param text
+	 */
+	public void textChanging(int start, int end, String text) {
+		boolean newChange = " ".equals(text) || end - start > 0 || text.length() > 1;
+		beginEdit(start, end - start, text, newChange);
+	}
 
-		// Limit maximum size of deque by clearing oldest states.
-		if (undoDeque.size() > MAX_DEQUE_SIZES) {
-			undoDeque.pollLast();
-		}
+	/**
+	 * Completes the edit started by textChanging, once the text has been replaced.
+	 */
+	public void textChanged() {
+		endEdit();
 	}
-	
+
 	/**
-	 * Indicates whether the manager has no currently saved state.
+	 * Records the styles and bullets of a region of text about to be formatted. Each formatting operation is a change
+	 * of its own.
 	 * 
-	 * @return true if undoDeque is empty, false otherwise
+	 * @param start
+	 * @param length
 	 */
-	public boolean isNoteStateEmpty() {
-		return undoDeque.isEmpty();
+	public void formatChanging(int start, int length) {
+		beginEdit(start, length, null, true);
+		currentChange = null;
+	}
+
+	/**
+	 * Completes the edit started by formatChanging, once the region has been formatted.
+	 */
+	public void formatChanged() {
+		endEdit();
+	}
+
+	/**
+	 * Indicates whether there is a change to undo.
+	 * 
+	 * @return true if undo would modify the note, false otherwise
+	 */
+	public boolean canUndo() {
+		return !undoDeque.isEmpty();
+	}
+
+	/**
+	 * Indicates whether there is a change to redo.
+	 * 
+	 * @return true if redo would modify the note, false otherwise
+	 */
+	public boolean canRedo() {
+		return !redoDeque.isEmpty();
 	}
 
 	/**
 	 * Performs an undo action.
+	 * 
+	 * @return true if a change was undone, false if there was nothing to undo
 	 */
-	public void undo() {
-		NoteState noteState = undoDeque.pollFirst();
-		if (noteState != null) { // Something to undo.
-			if (redoDeque.isEmpty()) {
-				// Pushes the current state of the note before a sequence of undo operations is performed.
-				redoDeque.push(new NoteState(note.getText(), note.getCaretOffset(), note.getStyleRanges(),
-						getBulletLineMapping()));
+	public boolean undo() {
+		closeCurrentChange();
+		Change change = undoDeque.pollFirst();
+		if (change != null) { // Something to undo.
+			for (int editIndex = change.edits.size() - 1; editIndex >= 0; --editIndex) {
+				Edit edit = change.edits.get(editIndex);
+				restoreRegion(edit.start, edit.newLength, edit.oldText, edit.oldLength, edit.oldStyles,
+						edit.oldBullets);
 			}
-			restoreState(noteState);
-			redoDeque.push(noteState);
+			setCaretOffset(change.caretBefore);
+			redoDeque.push(change);
+			return true;
 		}
+		return false;
 	}
 
 	/**
 	 * Performs a redo action.
+	 * 
+	 * @return true if a change was redone, false if there was nothing to redo
 	 */
-	public void redo() {
-		if (!redoDeque.isEmpty()) { // Something to redo.
-			undoDeque.push(redoDeque.pollFirst());
-			if (redoDeque.size() == 1) {
-				// Last possible redo operation, clear deque.
-				restoreState(redoDeque.pollFirst());
-			} else {
-				restoreState(redoDeque.peekFirst());
+	public boolean redo() {
+		Change change = redoDeque.pollFirst();
+		if (change != null) { // Something to redo.
+			for (Edit edit : change.edits) {
+				restoreRegion(edit.start, edit.oldLength, edit.newText, edit.newLength, edit.newStyles,
+						edit.newBullets);
 			}
+			setCaretOffset(change.caretAfter);
+			undoDeque.push(change);
+			return true;
 		}
+		return false;
 	}
 
 	/**
-	 * Restores the note to a previous state.
+	 * Captures the state of a region before it is modified.
 	 * 
-	 * @param noteState
+	 * @param start
+	 * @param length
+	 * @param newText the text that will replace the region, null if only formatting the region
+	 * @param newChange whether the edit must start a new change
+	 */
+	private void beginEdit(int start, int length, String newText, boolean newChange) {
+		// Any modification invalidates the changes that were undone.
+		for (Change change : redoDeque) {
+			updateSize(-change.sizeInBytes);
+		}
+		redoDeque.clear();
+		if (newChange || currentChange == null) {
+			closeCurrentChange();
+			currentChange = new Change(note.getCaretOffset());
+			undoDeque.push(currentChange);
+		}
+		pendingEdit = new Edit(start, length, newText == null ? null : note.getTextRange(start, length), newText,
+				getStyles(start, length), getBullets(start, length));
+		currentChange.edits.add(pendingEdit);
+		currentChange.sizeInBytes += pendingEdit.estimateSize();
+		updateSize(pendingEdit.estimateSize());
+		budget.touch(this);
+	}
+
+	/**
+	 * Captures the state of the region of the pending edit after it was modified.
 	 */
-	private void restoreState(NoteState noteState) {
-		// Set the text via the content to avoid firing events which would be picked up by the manager whilst
-		// performing undo redo operations.
-		note.getContent().setText(noteState.getText());
+	private void endEdit() {
+		if (pendingEdit != null) {
+			long previousSize = pendingEdit.estimateSize();
+			pendingEdit.newStyles = getStyles(pendingEdit.start, pendingEdit.newLength);
+			pendingEdit.newBullets = getBullets(pendingEdit.start, pendingEdit.newLength);
+			long sizeDelta = pendingEdit.estimateSize() - previousSize;
+			currentChange.sizeInBytes += sizeDelta;
+			updateSize(sizeDelta);
+			pendingEdit = null;
+			budget.enforceLimit();
+		}
+	}
 
-		note.setCaretOffset(noteState.getCaretOffset());
+	/**
+	 * Discards the oldest change that can be undone, or failing that the change that would be redone last. The change
+	 * currently receiving edits is never discarded.
+	 * 
+	 * @return true if a change was discarded, false if there was nothing left to discard
+	 */
+	boolean discardOldestChange() {
+		Change change = undoDeque.peekLast();
+		if (change != null && change != currentChange) {
+			undoDeque.pollLast();
+		} else {
+			change = redoDeque.pollLast();
+			if (change == null) {
+				return false;
+			}
+		}
+		updateSize(-change.sizeInBytes);
+		return true;
+	}
 
-		note.setStyleRanges(noteState.getStyles());
+	private void updateSize(long deltaBytes) {
+		sizeInBytes += deltaBytes;
+		budget.sizeChanged(deltaBytes);
+	}
 
-		setBulletLineMapping(noteState.getBulletLineMapping());
+	/**
+	 * Closes the change currently receiving edits, by recording the position of the caret.
+	 */
+	private void closeCurrentChange() {
+		if (currentChange != null) {
+			currentChange.caretAfter = note.getCaretOffset();
+			currentChange = null;
+		}
 	}
-	
+
 	/**
-	 * Constructs an array containing the bullets for the note.
+	 * Restores the text, styles and bullets of a region.
 	 * 
-	 * @return array of bullets indexed by line number; null value if no bullet on the line
+	 * @param start
+	 * @param currentLength length of the region in the current text
+	 * @param text text to put in the region, null to keep the current text
+	 * @param length length of the region once restored
+	 * @param styles
+	 * @param bullets
 	 */
-	private boolean[] getBulletLineMapping() {
-		boolean[] bullets = new boolean[note.getLineCount()];
-		for (int line = 0; line < bullets.length; ++line) {
-			bullets[line] = (note.getLineBullet(line) != null);
+	private void restoreRegion(int start, int currentLength, String text, int length, StyleRange[] styles,
+			boolean[] bullets) {
+		if (text != null) {
+			// Set the text via the content to avoid firing events which would be picked up by the manager whilst
+			// performing undo redo operations.
+			note.getContent().replaceTextRange(start, currentLength, text);
 		}
-		return bullets;
+		note.restoreFormat(start, length, styles, bullets);
+	}
+
+	private StyleRange[] getStyles(int start, int length) {
+		return length > 0 ? note.getStyleRanges(start, length) : new StyleRange[0];
 	}
 
 	/**
-	 * Sets bullets in the note given a bullet line mapping array.
+	 * Constructs an array containing the bullets for the lines of a region.
 	 * 
-	 * @param bulletLineMapping
-	 */
-	private void setBulletLineMapping(boolean[] bulletLineMapping) {
-		if (bulletLineMapping.length > 0) {
-			// It's more efficient to set several bullets at the same time, we therefore look for the longest sequence
-			// where all the bullets have the same state (i.e. they exist or don't).
-			boolean currentSequenceState = bulletLineMapping[0];
-			int sequenceLineStart = 0;
-			for (int line = 1; line < bulletLineMapping.length; ++line) {
-				if (currentSequenceState != bulletLineMapping[line]) {
-					note.setLineBullet(sequenceLineStart, line - sequenceLineStart, currentSequenceState);
-					sequenceLineStart = line;
-					currentSequenceState = !currentSequenceState;
-				}
-			}
-			note.setLineBullet(sequenceLineStart, bulletLineMapping.length - sequenceLineStart, currentSequenceState);
-		}
+	 * @param start
+	 * @param length
+	 * @return array of bullet states indexed by line number, relative to the first line of the region
+	 */
+	private boolean[] getBullets(int start, int length) {
+		int firstLine = note.getLineAtOffset(start);
+		return note.getBulletStates(firstLine, note.getLineAtOffset(start + length) - firstLine + 1);
+	}
+
+	private void setCaretOffset(int caretOffset) {
+		note.setCaretOffset(Math.min(caretOffset, note.getCharCount()));
 	}
 
 	/**
-	 * Class used to keep track of the state of the note in order to perform undo and redo actions.
+	 * Class grouping the edits that are undone or redone together.
 	 * 
 	 * @author Pyves
 	 *
 	 */
-	private static final class NoteState {
-
-		// Text content of the note.
-		final String text;
-		// Offset of the caret relative to the start of the text.
-		final int caretOffset;
-		// Styles of the text, e.g. bold, italic, etc.
-		final StyleRange[] styles;
-		// Indicates whether a bullet is present at the beginning of each text line.
-		final boolean[] bulletLineMapping;
-
-		NoteState(String text, int caretOffset, StyleRange[] styles, boolean[] bulletLineMapping) {
-			this.text = text;
-			this.caretOffset = caretOffset;
-			this.styles = styles;
-			this.bulletLineMapping = bulletLineMapping;
-		}
+	private static final class Change {
 
-		String getText() {
-			return text;
-		}
+		final List<Edit> edits = new ArrayList<>(1);
+		// Estimated memory used by the edits.
+		long sizeInBytes;
+		// Offset of the caret before the first edit of the change.
+		final int caretBefore;
+		// Offset of the caret after the last edit of the change.
+		int caretAfter;
 
-		int getCaretOffset() {
-			return caretOffset;
+		Change(int caretBefore) {
+			this.caretBefore = caretBefore;
+			this.caretAfter = caretBefore;
 		}
+	}
 
-		StyleRange[] getStyles() {
-			return styles;
+	/**
+	 * Class used to keep track of a modification of a region of the note in order to perform undo and redo actions.
+	 * 
+	 * @author Pyves
+	 *
+	 */
+	private static final class Edit {
+
+		// Rough estimates of the memory used by the objects referenced by an edit.
+		private static final int EDIT_OVERHEAD_BYTES = 96;
+		private static final int STYLE_RANGE_BYTES = 80;
+
+		// Offset of the region relative to the start of the text.
+		final int start;
+		// Length of the region before and after the edit.
+		final int oldLength;
+		final int newLength;
+		// Text of the region before and after the edit; null if the edit only changed styles or bullets.
+		final String oldText;
+		final String newText;
+		// Styles of the region before and after the edit, e.g. bold, italic, etc.
+		final StyleRange[] oldStyles;
+		StyleRange[] newStyles;
+		// Indicates whether a bullet is present at the beginning of each line of the region before and after the edit.
+		final boolean[] oldBullets;
+		boolean[] newBullets;
+
+		Edit(int start, int oldLength, String oldText, String newText, StyleRange[] oldStyles, boolean[] oldBullets) {
+			this.start = start;
+			this.oldLength = oldLength;
+			this.newLength = newText == null ? oldLength : newText.length();
+			this.oldText = oldText;
+			this.newText = newText;
+			this.oldStyles = oldStyles;
+			this.newStyles = oldStyles;
+			this.oldBullets = oldBullets;
+			this.newBullets = oldBullets;
 		}
 
-		boolean[] getBulletLineMapping() {
-			return bulletLineMapping;
+		/**
+		 * Estimates the memory used by this edit. Arrays shared by the old and new states are only counted once.
+		 * 
+		 * @return approximate size in bytes
+		 */
+		long estimateSize() {
+			long size = EDIT_OVERHEAD_BYTES + oldStyles.length * (long) STYLE_RANGE_BYTES + oldBullets.length;
+			if (oldText != null) {
+				size += 2L * (oldText.length() + newText.length());
+			}
+			if (newStyles != oldStyles) {
+				size += newStyles.length * (long) STYLE_RANGE_BYTES;
+			}
+			if (newBullets != oldBullets) {
+				size += newBullets.length;
+			}
+			return size;
 		}
 	}
 }
@@ -0,0 +1,170 @@
+package io.github.pyvesb.notepad4e.views;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import org.eclipse.jface.dialogs.Dialog;
+import org.eclipse.jface.dialogs.IDialogSettings;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Combo;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Shell;
+
+import io.github.pyvesb.notepad4e.Notepad4e;
+import io.github.pyvesb.notepad4e.strings.LocalStrings;
+import io.github.pyvesb.notepad4e.utils.NoteExportJob.ExportFormat;
+import io.github.pyvesb.notepad4e.utils.NoteExportJob.LineDelimiter;
+
+/**
+ * Dialog used to choose the format, encoding and line delimiters of an exported file. The format is guessed from the
+ * extension of the file if possible; the choices are otherwise remembered for the next export.
+ * 
+ * @author Pyves
+ *
+ */
+class ExportDialog extends Dialog {
+
+	private static final String SETTINGS_SECTION = "ExportDialog";
+	private static final String SETTINGS_FORMAT_KEY = "Format";
+	private static final String SETTINGS_ENCODING_KEY = "Encoding";
+	private static final String SETTINGS_LINE_DELIMITER_KEY = "LineDelimiter";
+
+	private final File file;
+	private final String[] formatLabels = { LocalStrings.dialogExportFormatText, LocalStrings.dialogExportFormatHtml,
+			LocalStrings.dialogExportFormatMarkdown };
+	// Encodings offered in the dialog, the platform's default one first.
+	private final String[] encodings;
+	private final String[] lineDelimiterLabels = { LocalStrings.dialogExportLineDelimiterUnchanged,
+			LocalStrings.dialogExportLineDelimiterUnix, LocalStrings.dialogExportLineDelimiterWindows,
+			LocalStrings.dialogExportLineDelimiterClassicMac };
+
+	private Combo formatCombo;
+	private Combo encodingCombo;
+	private Combo lineDelimiterCombo;
+	private ExportFormat format;
+	private Charset charset;
+	private LineDelimiter lineDelimiter;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param parentShell
+	 * @param file file to export to
+	 */
+	ExportDialog(Shell parentShell, File file) {
+		super(parentShell);
+		this.file = file;
+		Set<String> encodingNames = new LinkedHashSet<>();
+		encodingNames.add(Charset.defaultCharset().name());
+		encodingNames.add(StandardCharsets.UTF_8.name());
+		encodingNames.add(StandardCharsets.UTF_16.name());
+		encodingNames.add(StandardCharsets.UTF_16BE.name());
+		encodingNames.add(StandardCharsets.UTF_16LE.name());
+		encodingNames.add(StandardCharsets.ISO_8859_1.name());
+		encodingNames.add(StandardCharsets.US_ASCII.name());
+		if (Charset.isSupported("windows-1252")) {
+			encodingNames.add("windows-1252");
+		}
+		encodings = encodingNames.toArray(new String[encodingNames.size()]);
+	}
+
+	ExportFormat getFormat() {
+		return format;
+	}
+
+	Charset getCharset() {
+		return charset;
+	}
+
+	LineDelimiter getLineDelimiter() {
+		return lineDelimiter;
+	}
+
+	@Override
+	protected void configureShell(Shell shell) {
+		super.configureShell(shell);
+		shell.setText(LocalStrings.dialogExportTitle);
+	}
+
+	@Override
+	protected Control createDialogArea(Composite parent) {
+		Composite area = (Composite) super.createDialogArea(parent);
+		((GridLayout) area.getLayout()).numColumns = 2;
+		IDialogSettings settings = getSettings();
+
+		new Label(area, SWT.NONE).setText(LocalStrings.dialogExportFormat);
+		formatCombo = new Combo(area, SWT.READ_ONLY);
+		formatCombo.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+		formatCombo.setItems(formatLabels);
+		formatCombo.select(getDefaultFormat(settings).ordinal());
+
+		new Label(area, SWT.NONE).setText(LocalStrings.dialogExportEncoding);
+		encodingCombo = new Combo(area, SWT.READ_ONLY);
+		encodingCombo.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+		encodingCombo.setItems(encodings);
+		encodingCombo.select(Math.max(0, encodingCombo.indexOf(String.valueOf(settings.get(SETTINGS_ENCODING_KEY)))));
+
+		new Label(area, SWT.NONE).setText(LocalStrings.dialogExportLineDelimiter);
+		lineDelimiterCombo = new Combo(area, SWT.READ_ONLY);
+		lineDelimiterCombo.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+		lineDelimiterCombo.setItems(lineDelimiterLabels);
+		int lineDelimiterIndex = 0;
+		for (LineDelimiter delimiter : LineDelimiter.values()) {
+			if (delimiter.name().equals(settings.get(SETTINGS_LINE_DELIMITER_KEY))) {
+				lineDelimiterIndex = delimiter.ordinal();
+			}
+		}
+		lineDelimiterCombo.select(lineDelimiterIndex);
+		return area;
+	}
+
+	@Override
+	protected void okPressed() {
+		format = ExportFormat.values()[formatCombo.getSelectionIndex()];
+		charset = Charset.forName(encodingCombo.getText());
+		lineDelimiter = LineDelimiter.values()[lineDelimiterCombo.getSelectionIndex()];
+		IDialogSettings settings = getSettings();
+		settings.put(SETTINGS_FORMAT_KEY, format.name());
+		settings.put(SETTINGS_ENCODING_KEY, charset.name());
+		settings.put(SETTINGS_LINE_DELIMITER_KEY, lineDelimiter.name());
+		super.okPressed();
+	}
+
+	/**
+	 * Returns the format matching the extension of the exported file, or the last used format if the extension is not
+	 * known.
+	 * 
+	 * @param settings
+	 * @return the format to select when opening the dialog
+	 */
+	private ExportFormat getDefaultFormat(IDialogSettings settings) {
+		String fileName = file.getName().toLowerCase(Locale.ROOT);
+		if (fileName.endsWith(".html") || fileName.endsWith(".htm")) {
+			return ExportFormat.HTML;
+		} else if (fileName.endsWith(".md") || fileName.endsWith(".markdown")) {
+			return ExportFormat.MARKDOWN;
+		} else if (fileName.endsWith(".txt")) {
+			return ExportFormat.TEXT;
+		}
+		for (ExportFormat exportFormat : ExportFormat.values()) {
+			if (exportFormat.name().equals(settings.get(SETTINGS_FORMAT_KEY))) {
+				return exportFormat;
+			}
+		}
+		return ExportFormat.TEXT;
+	}
+
+	private static IDialogSettings getSettings() {
+		IDialogSettings pluginSettings = Notepad4e.getDefault().getDialogSettings();
+		IDialogSettings section = pluginSettings.getSection(SETTINGS_SECTION);
+		return section == null ? pluginSettings.addNewSection(SETTINGS_SECTION) : section;
+	}
+}
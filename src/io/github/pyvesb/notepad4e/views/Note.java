@@ -1,37 +1,49 @@
 package io.github.pyvesb.notepad4e.views;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.PrintWriter;
-
-import org.eclipse.core.runtime.IStatus;
-import org.eclipse.core.runtime.Status;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
 import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.window.Window;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.Bullet;
 import org.eclipse.swt.custom.ST;
 import org.eclipse.swt.custom.StyleRange;
 import org.eclipse.swt.custom.StyledText;
-import org.eclipse.swt.events.SelectionAdapter;
-import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.custom.TextChangeListener;
+import org.eclipse.swt.custom.TextChangedEvent;
+import org.eclipse.swt.custom.TextChangingEvent;
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.Font;
 import org.eclipse.swt.graphics.FontData;
 import org.eclipse.swt.graphics.GlyphMetrics;
 import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.RGB;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.FileDialog;
-import org.eclipse.swt.widgets.Menu;
-import org.eclipse.swt.widgets.MenuItem;
+import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.IWorkbenchPartSite;
 
 import io.github.pyvesb.notepad4e.Notepad4e;
 import io.github.pyvesb.notepad4e.preferences.Preferences;
 import io.github.pyvesb.notepad4e.strings.LocalStrings;
+import io.github.pyvesb.notepad4e.utils.BulletLineIndex;
+import io.github.pyvesb.notepad4e.utils.NoteExportJob;
+import io.github.pyvesb.notepad4e.utils.NoteJournal;
+import io.github.pyvesb.notepad4e.utils.NoteJournal.Record;
+import io.github.pyvesb.notepad4e.utils.NoteSnapshot;
+import io.github.pyvesb.notepad4e.utils.PieceTableContent;
+import io.github.pyvesb.notepad4e.utils.ResourceRegistry;
 import io.github.pyvesb.notepad4e.utils.UndoRedoManager;
 
 /**
@@ -42,29 +54,40 @@ import io.github.pyvesb.notepad4e.utils.UndoRedoManager;
  */
 public class Note extends StyledText {
 
-	// Used to parse strings.
+	// Used to parse colour strings.
 	private static final String SERIALISATION_DELIMITER = ",";
+	// Preferences defining the appearance of notes.
+	public static final Set<String> APPEARANCE_PREFERENCES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+			Preferences.LINE_SPACING, Preferences.BULLET_SPACING, Preferences.WRAP, Preferences.ALIGNMENT,
+			Preferences.JUSTIFY, Preferences.FONT_COLOR, Preferences.BACKGROUND_COLOR, Preferences.FONT)));
 
+	// Text of the note, stored as a piece table.
+	private final PieceTableContent content = new PieceTableContent();
 	// Used to enable undo and redo actions.
 	private final UndoRedoManager undoRedoManager;
 	// User defined preferences.
 	private final IEclipsePreferences preferences;
 	// Used at the beginning of each line in lists.
 	private final Bullet bullet;
-
-	// Appearance parameters of the note.
+	// Lines that have a bullet, kept in step with the text.
+	private final BulletLineIndex bulletLineIndex;
+
+	// Indicates whether the text, styles, bullets or editable state changed since the note was last saved.
+	private boolean dirty;
+	// Notified whenever the note becomes dirty, null if none.
+	private Runnable modificationListener;
+	// Journal recording the modifications of the note until they are saved, null if none.
+	private NoteJournal journal;
+	// Identifier of the note in the journal.
+	private String journalId;
+	// Sequence number of the last modification recorded in the journal or restored from it.
+	private long journalSequence;
+	// Appearance parameters of the note, shared with other notes via the plugin's resource registry.
 	private Color fontColor;
 	private Color backgroundColor;
 	private Font font;
-	// Menu items (mouse right-click).
-	private MenuItem menuItemUndo;
-	private MenuItem menuItemRedo;
-	private MenuItem menuItemCut;
-	private MenuItem menuItemCopy;
-	private MenuItem menuItemPaste;
-	private MenuItem menuItemSelectAll;
-	private MenuItem menuItemSeparator1;
-	private MenuItem menuItemSeparator2;
+	// Data with which the font was acquired, null if the default font of the StyledText component is used.
+	private FontData fontData;
 
 	private enum TextStyle {
 		BOLD, ITALIC, UNDERLINE, STRIKEOUT
@@ -75,13 +98,18 @@ public class Note extends StyledText {
 	 * 
 	 * @param parent
 	 * @param text
-	 * @param bullets
-	 * @param style
+	 * @param styles
+	 * @param bulletLines
 	 * @param editable
 	 */
-	public Note(Composite parent, String text, String style, String bullets, boolean editable) {
+	public Note(Composite parent, String text, StyleRange[] styles, int[] bulletLines, boolean editable) {
 		// Enable multiple lines and scroll bars.
 		super(parent, SWT.V_SCROLL | SWT.H_SCROLL);
+		// Must be installed before setting any text.
+		setContent(content);
+		// Registered after the StyledText component, which has therefore moved its bullets when the index is notified.
+		bulletLineIndex = new BulletLineIndex(content, line -> getLineBullet(line) != null);
+		content.addTextChangeListener(bulletLineIndex);
 
 		preferences = InstanceScope.INSTANCE.getNode(Notepad4e.PLUGIN_ID);
 
@@ -93,23 +121,128 @@ public class Note extends StyledText {
 		setAlwaysShowScrollBars(false);
 		setParametersFromPreferences();
 		setText(text);
-		deserialiseStyle(style);
-		deserialiseBullets(bullets);
-		initialiseMenu();
+		// Styles and bullets can be null if new note.
+		if (styles != null) {
+			setStyleRanges(styles);
+		}
+		if (bulletLines != null) {
+			setBulletLines(bulletLines);
+		}
 
 		undoRedoManager = new UndoRedoManager(this);
-		// Listen to text modifications.
-		addVerifyListener(event -> {
-			// Save state if new word OR no previously state OR overwriting existing text OR pasting several chars.
-			if (" ".equals(event.text) || undoRedoManager.isNoteStateEmpty() || event.end - event.start > 0
-					|| event.text.length() > 1) {
-				undoRedoManager.saveNoteState();
+		// Listen to text modifications, including the ones performed via setText.
+		addVerifyListener(event -> undoRedoManager.textChanging(event.start, event.end, event.text));
+		addModifyListener(event -> {
+			undoRedoManager.textChanged();
+			// Modification must be picked up by the next save.
+			markDirty();
+		});
+
+		// Records every text change, including the ones made by undo and redo, once a journal is attached.
+		content.addTextChangeListener(new TextChangeListener() {
+			@Override
+			public void textChanging(TextChangingEvent event) {
+				if (journal != null) {
+					journal.textReplaced(journalId, ++journalSequence, event.start, event.replaceCharCount,
+							event.newText == null ? "" : event.newText);
+				}
+			}
+
+			@Override
+			public void textChanged(TextChangedEvent event) {
+				// Already recorded when changing.
+			}
+
+			@Override
+			public void textSet(TextChangedEvent event) {
+				journalText();
 			}
 		});
 
 		if (!editable) {
 			toggleEditable();
 		}
+		// Note has just been constructed from the provided state, nothing to save yet.
+		dirty = false;
+	}
+
+	/**
+	 * Starts recording the modifications of the note in a journal.
+	 * 
+	 * @param journal
+	 * @param id identifier of the note
+	 * @param sequence sequence number of the last modification already recorded or saved
+	 */
+	public void attachJournal(NoteJournal journal, String id, long sequence) {
+		this.journal = journal;
+		this.journalId = id;
+		this.journalSequence = sequence;
+	}
+
+	/**
+	 * Returns the sequence number of the last modification recorded in the journal.
+	 * 
+	 * @return the sequence number
+	 */
+	public long getJournalSequence() {
+		return journalSequence;
+	}
+
+	/**
+	 * Records the whole text of the note in the journal, for instance when the note was just created.
+	 */
+	public void journalText() {
+		if (journal != null) {
+			journal.textSet(journalId, ++journalSequence, content.getTextRange(0, content.getCharCount()));
+		}
+	}
+
+	/**
+	 * Applies modifications read from the journal, skipping the ones already included in the state of the note. The
+	 * replayed modifications are not recorded again.
+	 * 
+	 * @param records records of this note, in the order in which they were appended
+	 */
+	public void replayJournal(List<Record> records) {
+		NoteJournal attachedJournal = journal;
+		journal = null;
+		boolean replayed = false;
+		try {
+			for (Record record : records) {
+				if (record.getSequence() <= journalSequence) {
+					continue;
+				}
+				switch (record.getType()) {
+					case REPLACE:
+						replaceTextRange(record.getOffset(), record.getRemovedLength(), record.getText());
+						break;
+					case SET_TEXT:
+						setText(record.getText());
+						break;
+					case FORMAT:
+						if (record.getStyles() != null && record.getLength() > 0) {
+							replaceStyleRanges(record.getOffset(), record.getLength(), record.getStyles());
+						}
+						setBulletStates(record.getFirstLine(), record.getBullets());
+						break;
+					case EDITABLE:
+						if (getEditable() != record.isEditable()) {
+							toggleEditable();
+						}
+						break;
+					case CREATE:
+						// Handled by the view.
+						break;
+				}
+				journalSequence = record.getSequence();
+				replayed = true;
+			}
+		} finally {
+			journal = attachedJournal;
+		}
+		if (replayed) {
+			markDirty();
+		}
 	}
 
 	/**
@@ -117,91 +250,155 @@ public class Note extends StyledText {
 	 */
 	@Override
 	public void dispose() {
-		fontColor.dispose();
-		backgroundColor.dispose();
-		if (font != null) {
-			font.dispose();
+		undoRedoManager.dispose();
+		ResourceRegistry resourceRegistry = Notepad4e.getDefault().getResourceRegistry();
+		resourceRegistry.releaseColor(fontColor);
+		resourceRegistry.releaseColor(backgroundColor);
+		if (fontData != null) {
+			resourceRegistry.releaseFont(fontData);
 		}
-		menuItemUndo.dispose();
-		menuItemRedo.dispose();
-		menuItemCut.dispose();
-		menuItemCopy.dispose();
-		menuItemPaste.dispose();
-		menuItemSelectAll.dispose();
-		menuItemSeparator1.dispose();
-		menuItemSeparator2.dispose();
+		// The context menu is shared with the other notes, disposing a control would otherwise dispose its menu.
+		setMenu(null);
 		super.dispose();
 	}
 
 	/**
-	 * Sets properties that can be defined by the user in the plugin's preferences page.
+	 * Sets all the properties that can be defined by the user in the plugin's preferences page.
 	 */
 	public void setParametersFromPreferences() {
+		setParametersFromPreferences(APPEARANCE_PREFERENCES);
+	}
+
+	/**
+	 * Sets the properties corresponding to the given preferences; other preferences are ignored.
+	 * 
+	 * @param changedKeys names of the preferences to apply
+	 */
+	public void setParametersFromPreferences(Collection<String> changedKeys) {
 		// Line spacing parameter.
-		setLineSpacing(preferences.getInt(Preferences.LINE_SPACING, Preferences.LINE_SPACING_DEFAULT));
+		if (changedKeys.contains(Preferences.LINE_SPACING)) {
+			setLineSpacing(preferences.getInt(Preferences.LINE_SPACING, Preferences.LINE_SPACING_DEFAULT));
+		}
 
 		// Set bullet indentation spacing (width of GlyphMetrics) parameter.
-		bullet.style.metrics.width = preferences.getInt(Preferences.BULLET_SPACING, Preferences.BULLET_SPACING_DEFAULT);
+		if (changedKeys.contains(Preferences.BULLET_SPACING)) {
+			bullet.style.metrics.width = preferences.getInt(Preferences.BULLET_SPACING,
+					Preferences.BULLET_SPACING_DEFAULT);
+			// Bullets must be set again for the lines to be laid out with the new width.
+			setBulletLines(getBulletLines());
+		}
 
-		// Line wrap parameter.
-		setWordWrap(preferences.getBoolean(Preferences.WRAP, Preferences.WRAP_DEFAULT));
+		// Line wrap and alignment parameters, the latter depends on the former.
+		if (changedKeys.contains(Preferences.WRAP) || changedKeys.contains(Preferences.ALIGNMENT)) {
+			setWordWrap(preferences.getBoolean(Preferences.WRAP, Preferences.WRAP_DEFAULT));
+			// Alignment parameter (left or right).
+			if ("right".equals(preferences.get(Preferences.ALIGNMENT, Preferences.ALIGNMENT_DEFAULT))) {
+				setAlignment(SWT.RIGHT);
+				// Word wrapping must be enabled for right alignment to be effective.
+				setWordWrap(true);
+			} else {
+				setAlignment(SWT.LEFT);
+			}
+		}
 
 		// Text justify parameter.
-		setJustify(preferences.getBoolean(Preferences.JUSTIFY, Preferences.JUSTIFY_DEFAULT));
-
-		// Alignment parameter (left or right).
-		if ("right".equals(preferences.get(Preferences.ALIGNMENT, Preferences.ALIGNMENT_DEFAULT))) {
-			setAlignment(SWT.RIGHT);
-			// Word wrapping must be enabled for right alignment to be effective.
-			setWordWrap(true);
-		} else {
-			setAlignment(SWT.LEFT);
+		if (changedKeys.contains(Preferences.JUSTIFY)) {
+			setJustify(preferences.getBoolean(Preferences.JUSTIFY, Preferences.JUSTIFY_DEFAULT));
 		}
 
+		// New resources are acquired before the previous ones are released, so that unchanged resources are not
+		// disposed and recreated.
+		ResourceRegistry resourceRegistry = Notepad4e.getDefault().getResourceRegistry();
+
 		// Font color parameter.
-		String[] fontColorRGBStrings = preferences
-				.get(Preferences.FONT_COLOR, Preferences.FONT_COLOR_DEFAULT)
-				.split(SERIALISATION_DELIMITER);
-		// The strings in the above array correspond to the red, green and blue colors.
-		fontColor = new Color(Display.getCurrent(), Integer.parseInt(fontColorRGBStrings[0]),
-				Integer.parseInt(fontColorRGBStrings[1]), Integer.parseInt(fontColorRGBStrings[2]));
-		setForeground(fontColor);
+		if (changedKeys.contains(Preferences.FONT_COLOR)) {
+			Color previousFontColor = fontColor;
+			fontColor = resourceRegistry
+					.acquireColor(parseRGB(preferences.get(Preferences.FONT_COLOR, Preferences.FONT_COLOR_DEFAULT)));
+			setForeground(fontColor);
+			if (previousFontColor != null) {
+				resourceRegistry.releaseColor(previousFontColor);
+			}
+		}
 
 		// Background color parameter.
-		String[] backgroundColorRGBStrings = preferences
-				.get(Preferences.BACKGROUND_COLOR, Preferences.BACKGROUND_COLOR_DEFAULT)
-				.split(SERIALISATION_DELIMITER);
-		// The strings in the above array correspond to the red, green and blue colors.
-		backgroundColor = new Color(Display.getCurrent(), Integer.parseInt(backgroundColorRGBStrings[0]),
-				Integer.parseInt(backgroundColorRGBStrings[1]), Integer.parseInt(backgroundColorRGBStrings[2]));
-		setBackground(backgroundColor);
+		if (changedKeys.contains(Preferences.BACKGROUND_COLOR)) {
+			Color previousBackgroundColor = backgroundColor;
+			backgroundColor = resourceRegistry.acquireColor(
+					parseRGB(preferences.get(Preferences.BACKGROUND_COLOR, Preferences.BACKGROUND_COLOR_DEFAULT)));
+			setBackground(backgroundColor);
+			if (previousBackgroundColor != null) {
+				resourceRegistry.releaseColor(previousBackgroundColor);
+			}
+		}
 
 		// Font parameter; a semicolon is appended by the Eclipse API when retrieving it from the plugin's preference
 		// page, it must be deleted.
-		String fontString = preferences.get(Preferences.FONT, Preferences.FONT_DEFAULT).replace(";", "");
-		// An empty string is returned when the user has not set the font in the preferences; do not set the font so the
-		// plugin will display the default font of the StyledText component instead.
-		if (!fontString.isEmpty()) {
-			font = new Font(Display.getCurrent(), new FontData(fontString));
+		if (changedKeys.contains(Preferences.FONT)) {
+			String fontString = preferences.get(Preferences.FONT, Preferences.FONT_DEFAULT).replace(";", "");
+			FontData previousFontData = fontData;
+			// An empty string is returned when the user has not set the font in the preferences; the plugin then
+			// displays the default font of the StyledText component instead.
+			if (fontString.isEmpty()) {
+				fontData = null;
+				font = null;
+			} else {
+				fontData = new FontData(fontString);
+				font = resourceRegistry.acquireFont(fontData);
+			}
 			setFont(font);
+			if (previousFontData != null) {
+				resourceRegistry.releaseFont(previousFontData);
+			}
 		}
 	}
 
+	/**
+	 * Parses a color serialised in the plugin's preferences.
+	 * 
+	 * @param serialisation red, green and blue components separated by SERIALISATION_DELIMITER
+	 * @return the parsed color components
+	 */
+	private static RGB parseRGB(String serialisation) {
+		String[] rgbStrings = serialisation.split(SERIALISATION_DELIMITER);
+		return new RGB(Integer.parseInt(rgbStrings[0]), Integer.parseInt(rgbStrings[1]),
+				Integer.parseInt(rgbStrings[2]));
+	}
+
 	/**
 	 * Undos latest Note modification.
 	 */
 	public void undo() {
-		if (getEditable()) {
-			undoRedoManager.undo();
+		// Restored state is set via the content and therefore does not fire modify events.
+		if (getEditable() && undoRedoManager.undo()) {
+			markDirty();
 		}
 	}
 
+	/**
+	 * Indicates whether there is a modification to undo.
+	 * 
+	 * @return true if the note is editable and has a modification to undo, false otherwise
+	 */
+	public boolean canUndo() {
+		return getEditable() && undoRedoManager.canUndo();
+	}
+
+	/**
+	 * Indicates whether there is a modification to redo.
+	 * 
+	 * @return true if the note is editable and has a modification to redo, false otherwise
+	 */
+	public boolean canRedo() {
+		return getEditable() && undoRedoManager.canRedo();
+	}
+
 	/**
 	 * Redos latest Note modification.
 	 */
 	public void redo() {
-		if (getEditable()) {
-			undoRedoManager.redo();
+		if (getEditable() && undoRedoManager.redo()) {
+			markDirty();
 		}
 	}
 
@@ -247,23 +444,20 @@ public class Note extends StyledText {
 	 */
 	public void bulletListSelection() {
 		if (getEditable()) {
+			Point selection = getSelectionRange();
 			// Save bullet state prior to modification for undo actions.
-			undoRedoManager.saveNoteState();
+			undoRedoManager.formatChanging(selection.x, selection.y);
 
-			Point selection = getSelectionRange();
 			int selectionStartLine = getLineAtOffset(selection.x);
 			int selectionEndLine = getLineAtOffset(selection.x + selection.y);
-			int bulletsInSelection = 0;
-			// Count number of lines that currently have a bullet.
-			for (int line = selectionStartLine; line <= selectionEndLine; ++line) {
-				if (getLineBullet(line) != null) {
-					++bulletsInSelection;
-				}
-			}
-
 			int selectedLines = selectionEndLine - selectionStartLine + 1;
+			// Count number of lines that currently have a bullet.
+			int bulletsInSelection = bulletLineIndex.count(selectionStartLine, selectedLines);
 			// If all lines already have bullets, remove them all, otherwise add them.
 			setLineBullet(selectionStartLine, selectedLines, bulletsInSelection != selectedLines);
+			undoRedoManager.formatChanged();
+			journalFormat(selection.x, selection.y, false);
+			markDirty();
 		}
 	}
 
@@ -274,11 +468,13 @@ public class Note extends StyledText {
 		Point selectionRange = getSelectionRange();
 		if (getEditable() && selectionRange.y != 0) {
 			// Save style state prior to modification for undo actions.
-			undoRedoManager.saveNoteState();
+			undoRedoManager.formatChanging(selectionRange.x, selectionRange.y);
 
-			// No colors are specified as they are defined by the plugin's preferences.
-			StyleRange styleRange = new StyleRange(selectionRange.x, selectionRange.y, null, null, SWT.NORMAL);
-			setStyleRange(styleRange);
+			// Replacing the styles of the selection with an empty array removes them in a single operation.
+			setStyleRanges(selectionRange.x, selectionRange.y, null, new StyleRange[0]);
+			undoRedoManager.formatChanged();
+			journalFormat(selectionRange.x, selectionRange.y, true);
+			markDirty();
 		}
 	}
 
@@ -288,53 +484,130 @@ public class Note extends StyledText {
 	public void toggleEditable() {
 		boolean newState = !getEditable();
 		setEditable(newState);
-		menuItemUndo.setEnabled(newState);
-		menuItemRedo.setEnabled(newState);
-		menuItemCut.setEnabled(newState);
-		menuItemPaste.setEnabled(newState);
+		if (journal != null) {
+			journal.editableChanged(journalId, ++journalSequence, newState);
+		}
+		markDirty();
 	}
 
 	/**
-	 * Creates a string giving a description of the styles in the current note.
+	 * Indicates whether the note was modified since its state was last saved.
 	 * 
-	 * @return CSV string containing a serialised representation of the styles
-	 */
-	public String serialiseStyle() {
-		StringBuilder styleSerialisation = new StringBuilder();
-		StyleRange[] currentStyles = getStyleRanges();
-		// Append integers corresponding to various information of each style range object, separated by
-		// STRING_SEPARATOR.
-		for (StyleRange currentStyle : currentStyles) {
-			styleSerialisation.append(currentStyle.start).append(SERIALISATION_DELIMITER);
-			styleSerialisation.append(currentStyle.length).append(SERIALISATION_DELIMITER);
-			styleSerialisation.append(currentStyle.fontStyle).append(SERIALISATION_DELIMITER);
-			// If underlined, 1, else 0.
-			styleSerialisation.append(currentStyle.underline ? 1 : 0).append(SERIALISATION_DELIMITER);
-			// If strikeout, 1, else 0.
-			styleSerialisation.append(currentStyle.strikeout ? 1 : 0).append(SERIALISATION_DELIMITER);
+	 * @return true if the note must be saved, false otherwise
+	 */
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	/**
+	 * Sets the listener notified whenever the note is modified.
+	 * 
+	 * @param modificationListener
+	 */
+	public void setModificationListener(Runnable modificationListener) {
+		this.modificationListener = modificationListener;
+	}
+
+	/**
+	 * Marks the current state of the note as saved.
+	 */
+	public void clearDirty() {
+		dirty = false;
+	}
+
+	/**
+	 * Records that the note must be saved and notifies the modification listener.
+	 */
+	private void markDirty() {
+		dirty = true;
+		if (modificationListener != null) {
+			modificationListener.run();
+		}
+	}
+
+	/**
+	 * Restores the styles and bullets of a region, for instance when undoing a modification. Text changes are recorded
+	 * by the content listener, the restored styles and bullets are recorded here.
+	 * 
+	 * @param start
+	 * @param length
+	 * @param styles
+	 * @param bullets bullet states of the lines of the region, relative to its first line
+	 */
+	public void restoreFormat(int start, int length, StyleRange[] styles, boolean[] bullets) {
+		if (length > 0) {
+			replaceStyleRanges(start, length, styles);
+		}
+		setBulletStates(getLineAtOffset(start), bullets);
+		journalFormat(start, length, true);
+	}
+
+	/**
+	 * Records the styles and bullets of a region of the note in the journal.
+	 * 
+	 * @param start
+	 * @param length
+	 * @param stylesChanged false if only bullets were changed
+	 */
+	private void journalFormat(int start, int length, boolean stylesChanged) {
+		if (journal != null) {
+			int firstLine = getLineAtOffset(start);
+			StyleRange[] styles = stylesChanged && length > 0 ? getStyleRanges(start, length) : null;
+			journal.formatChanged(journalId, ++journalSequence, start, length, styles, firstLine,
+					getBulletStates(firstLine, getLineAtOffset(start + length) - firstLine + 1));
 		}
-		return styleSerialisation.toString();
 	}
 
 	/**
-	 * Creates a string giving a description of the bullets in the current note.
+	 * Takes an immutable copy of the current state of the note, which can then be serialised outside of the UI thread.
 	 * 
-	 * @return CSV string containing a serialised representation of the bullets
-	 */
-	public String serialiseBullets() {
-		StringBuilder bulletLines = new StringBuilder();
-		for (int line = 0; line < getLineCount(); ++line) {
-			if (getLineBullet(line) != null) {
-				// Bullet found: add line number with separator.
-				bulletLines.append(line).append(SERIALISATION_DELIMITER);
+	 * @param id
+	 * @return snapshot of the note
+	 */
+	public NoteSnapshot createSnapshot(String id) {
+		// The text is not copied, the snapshot shares the buffers of the piece table.
+		return new NoteSnapshot(id, content.createSnapshot(), getStyleRanges(), getBulletLines(), journalSequence);
+	}
+
+	/**
+	 * Returns the indexes of the lines that currently have a bullet.
+	 * 
+	 * @return array of line numbers, in increasing order
+	 */
+	private int[] getBulletLines() {
+		return bulletLineIndex.getLines();
+	}
+
+	/**
+	 * Returns the bullet states of consecutive lines.
+	 * 
+	 * @param startLine
+	 * @param lineCount
+	 * @return array of bullet states indexed by line number, relative to the first line
+	 */
+	public boolean[] getBulletStates(int startLine, int lineCount) {
+		return bulletLineIndex.get(startLine, lineCount);
+	}
+
+	/**
+	 * Sets the bullets of consecutive lines, setting lines with the same state at the same time.
+	 * 
+	 * @param firstLine
+	 * @param bullets array of bullet states indexed by line number, relative to the first line
+	 */
+	public void setBulletStates(int firstLine, boolean[] bullets) {
+		int runStart = 0;
+		for (int line = 1; line <= bullets.length; ++line) {
+			if (line == bullets.length || bullets[line] != bullets[runStart]) {
+				setLineBullet(firstLine + runStart, line - runStart, bullets[runStart]);
+				runStart = line;
 			}
 		}
-		// Remove trailing separator.
-		return bulletLines.length() > 1 ? bulletLines.substring(0, bulletLines.length() - 1) : "";
 	}
 
 	/**
-	 * Exports the brute text in the current note as a text file.
+	 * Exports the brute text in the current note as a text file. The file is written by a background job, with the
+	 * encoding and line delimiters chosen by the user.
 	 * 
 	 * @param iWorkbenchPartSite
 	 */
@@ -349,22 +622,34 @@ public class Note extends StyledText {
 		}
 
 		File file = new File(fileName);
-		if (!file.exists() || MessageDialog.openQuestion(iWorkbenchPartSite.getShell(),
-				LocalStrings.dialogOverwriteTitle, LocalStrings.dialogOverwriteMsg)) {
-			// Write the current note's text to the file, with handling of IO exceptions.
-			try (FileOutputStream outStream = new FileOutputStream(file);
-					PrintWriter printStream = new PrintWriter(outStream)) {
-				printStream.print(getText());
-				printStream.flush();
-				MessageDialog.openInformation(iWorkbenchPartSite.getShell(), LocalStrings.dialogExportedTitle,
-						LocalStrings.dialogExportedMsg);
-			} catch (IOException e) {
-				MessageDialog.openInformation(iWorkbenchPartSite.getShell(), LocalStrings.dialogErrorTitle,
-						LocalStrings.dialogErrorMsg);
-				Notepad4e.getDefault().getLog()
-						.log(new Status(IStatus.ERROR, Notepad4e.PLUGIN_ID, LocalStrings.dialogErrorMsg, e));
-			}
+		Shell shell = iWorkbenchPartSite.getShell();
+		if (file.exists() && !MessageDialog.openQuestion(shell, LocalStrings.dialogOverwriteTitle,
+				LocalStrings.dialogOverwriteMsg)) {
+			return;
 		}
+		ExportDialog exportDialog = new ExportDialog(shell, file);
+		if (exportDialog.open() != Window.OK) {
+			return;
+		}
+		// The snapshot shares the buffers of the piece table, the note can therefore be edited during the export.
+		NoteExportJob exportJob = new NoteExportJob(createSnapshot(journalId), file, exportDialog.getFormat(),
+				exportDialog.getCharset(), exportDialog.getLineDelimiter());
+		Display display = getDisplay();
+		exportJob.addJobChangeListener(new JobChangeAdapter() {
+			@Override
+			public void done(IJobChangeEvent event) {
+				// Errors are reported and logged by the platform, cancellations do not need to be reported.
+				if (event.getResult().isOK() && !display.isDisposed()) {
+					display.asyncExec(() -> {
+						if (!shell.isDisposed()) {
+							MessageDialog.openInformation(shell, LocalStrings.dialogExportedTitle,
+									LocalStrings.dialogExportedMsg);
+						}
+					});
+				}
+			}
+		});
+		exportJob.schedule();
 	}
 
 	/**
@@ -379,103 +664,34 @@ public class Note extends StyledText {
 	}
 
 	/**
-	 * Applies styles to the current note based on a styles' serialisation string.
+	 * Sets the bullet of consecutive lines and records them in the bullet line index. All bullet changes go through
+	 * this method.
 	 * 
-	 * @param serialisation
-	 */
-	private void deserialiseStyle(String serialisation) {
-		// Style can be null if new note.
-		if (serialisation != null && !serialisation.isEmpty()) {
-			String[] integers = serialisation.split(SERIALISATION_DELIMITER);
-			StyleRange[] styles = new StyleRange[integers.length / 5];
-			// Do the parsing.
-			for (int styleIndex = 0; styleIndex < styles.length; ++styleIndex) {
-				// Each StyleRange object has 5 corresponding integers in the CSV string.
-				int integerIndex = 5 * styleIndex;
-				styles[styleIndex] = new StyleRange();
-				styles[styleIndex].start = Integer.parseInt(integers[integerIndex]);
-				styles[styleIndex].length = Integer.parseInt(integers[integerIndex + 1]);
-				styles[styleIndex].fontStyle = Integer.parseInt(integers[integerIndex + 2]);
-				styles[styleIndex].underline = (Integer.parseInt(integers[integerIndex + 3]) == 1) ? true : false;
-				styles[styleIndex].strikeout = (Integer.parseInt(integers[integerIndex + 4]) == 1) ? true : false;
-			}
-			// Apply the parsed styles.
-			setStyleRanges(styles);
-		}
+	 * @param startLine
+	 * @param lineCount
+	 * @param bullet null to remove bullets
+	 */
+	@Override
+	public void setLineBullet(int startLine, int lineCount, Bullet bullet) {
+		super.setLineBullet(startLine, lineCount, bullet);
+		bulletLineIndex.set(startLine, lineCount, bullet != null);
 	}
 
 	/**
-	 * Adds bullets to the current note based on a bullets' serialisation string (for instance "0,1,4").
+	 * Adds bullets to the given lines, setting consecutive lines at the same time.
 	 * 
-	 * @param serialisation
+	 * @param bulletLines line numbers, in increasing order
 	 */
-	private void deserialiseBullets(String serialisation) {
-		// Bullets can be null if new note or upgrading from old plugin version.
-		if (serialisation != null && !serialisation.isEmpty()) {
-			for (String lineNumber : serialisation.split(SERIALISATION_DELIMITER)) {
-				setLineBullet(Integer.parseInt(lineNumber), 1, bullet);
+	private void setBulletLines(int[] bulletLines) {
+		int runStart = 0;
+		for (int lineIndex = 1; lineIndex <= bulletLines.length; ++lineIndex) {
+			if (lineIndex == bulletLines.length || bulletLines[lineIndex] != bulletLines[lineIndex - 1] + 1) {
+				setLineBullet(bulletLines[runStart], lineIndex - runStart, bullet);
+				runStart = lineIndex;
 			}
 		}
 	}
 
-	/**
-	 * Initialises the menu triggered by a right-click inside the note.
-	 */
-	private void initialiseMenu() {
-		Menu menu = new Menu(getShell(), SWT.POP_UP);
-		menuItemUndo = new MenuItem(menu, SWT.NONE);
-		menuItemUndo.setText(LocalStrings.menuUndo);
-		menuItemUndo.addSelectionListener(new SelectionAdapter() {
-			@Override
-			public void widgetSelected(SelectionEvent event) {
-				undo();
-			}
-		});
-		menuItemRedo = new MenuItem(menu, SWT.NONE);
-		menuItemRedo.setText(LocalStrings.menuRedo);
-		menuItemRedo.addSelectionListener(new SelectionAdapter() {
-			@Override
-			public void widgetSelected(SelectionEvent event) {
-				redo();
-			}
-		});
-		menuItemSeparator1 = new MenuItem(menu, SWT.SEPARATOR);
-		menuItemCut = new MenuItem(menu, SWT.NONE);
-		menuItemCut.setText(LocalStrings.menuCut);
-		menuItemCut.addSelectionListener(new SelectionAdapter() {
-			@Override
-			public void widgetSelected(SelectionEvent event) {
-				cut();
-			}
-		});
-		menuItemCopy = new MenuItem(menu, SWT.NONE);
-		menuItemCopy.setText(LocalStrings.menuCopy);
-		menuItemCopy.addSelectionListener(new SelectionAdapter() {
-			@Override
-			public void widgetSelected(SelectionEvent event) {
-				copy();
-			}
-		});
-		menuItemPaste = new MenuItem(menu, SWT.NONE);
-		menuItemPaste.setText(LocalStrings.menuPaste);
-		menuItemPaste.addSelectionListener(new SelectionAdapter() {
-			@Override
-			public void widgetSelected(SelectionEvent event) {
-				paste();
-			}
-		});
-		menuItemSeparator2 = new MenuItem(menu, SWT.SEPARATOR);
-		menuItemSelectAll = new MenuItem(menu, SWT.NONE);
-		menuItemSelectAll.setText(LocalStrings.menuSelectAll);
-		menuItemSelectAll.addSelectionListener(new SelectionAdapter() {
-			@Override
-			public void widgetSelected(SelectionEvent event) {
-				selectAll();
-			}
-		});
-		setMenu(menu);
-	}
-
 	/**
 	 * Applies a new style to the currently selected text.
 	 * 
@@ -486,27 +702,52 @@ public class Note extends StyledText {
 		// Only attempt to apply styles if text is selected and note editable.
 		if (getEditable() && selectionRange.y != 0) {
 			// Save style state prior to modification for undo actions.
-			undoRedoManager.saveNoteState();
+			undoRedoManager.formatChanging(selectionRange.x, selectionRange.y);
 
 			// Retrieve the current styles in the selection. If the selection (or parts of it) does not have any style,
 			// there are no corresponding entries in the following array.
 			StyleRange[] currentStyles = getStyleRanges(selectionRange.x, selectionRange.y);
 
-			StyleRange selectionStyleRange = new StyleRange(selectionRange.x, selectionRange.y, null, null);
-			addStyleToStyleRange(newStyle, selectionStyleRange);
-			// Apply the style to the whole selection range; ranges that previously had no style and that are are not
-			// accounted for in currentStyles now have the wanted style.
-			setStyleRange(selectionStyleRange);
-
-			// The above call overwrote the previous styles; the previous styles are re-applied with the additional
-			// new one.
+			// Compute the styles of the whole selection in a single pass: existing ranges get the additional new style
+			// and the gaps between them get a range with only the new style.
+			StyleRange[] mergedStyles = new StyleRange[2 * currentStyles.length + 1];
+			int mergedCount = 0;
+			int offset = selectionRange.x;
 			for (StyleRange currentStyle : currentStyles) {
+				if (currentStyle.start > offset) {
+					mergedStyles[mergedCount++] = createStyleRange(newStyle, offset, currentStyle.start - offset);
+				}
 				addStyleToStyleRange(newStyle, currentStyle);
-				setStyleRange(currentStyle);
+				mergedStyles[mergedCount++] = currentStyle;
+				offset = currentStyle.start + currentStyle.length;
 			}
+			int selectionEnd = selectionRange.x + selectionRange.y;
+			if (offset < selectionEnd) {
+				mergedStyles[mergedCount++] = createStyleRange(newStyle, offset, selectionEnd - offset);
+			}
+			// Replace the styles of the selection at once, which only merges and redraws the widget's styles once.
+			setStyleRanges(selectionRange.x, selectionRange.y, null, Arrays.copyOf(mergedStyles, mergedCount));
+			undoRedoManager.formatChanged();
+			journalFormat(selectionRange.x, selectionRange.y, true);
+			markDirty();
 		}
 	}
 
+	/**
+	 * Creates a StyleRange object with the given style only.
+	 * 
+	 * @param newStyle
+	 * @param start
+	 * @param length
+	 * @return the new StyleRange
+	 */
+	private StyleRange createStyleRange(TextStyle newStyle, int start, int length) {
+		// No colors are specified as they are defined by the plugin's preferences.
+		StyleRange styleRange = new StyleRange(start, length, null, null);
+		addStyleToStyleRange(newStyle, styleRange);
+		return styleRange;
+	}
+
 	/**
 	 * Adds a new style to the StyleRange object.
 	 * 
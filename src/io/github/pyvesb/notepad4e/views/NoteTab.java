@@ -0,0 +1,133 @@
+package io.github.pyvesb.notepad4e.views;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import io.github.pyvesb.notepad4e.utils.HibernatedNote;
+
+/**
+ * Class representing a tab of the notepad. The note widget of a tab is only created when the tab is first displayed,
+ * until then the tab simply refers to the note in the note store. Widgets of notes that are unused for a while can be
+ * disposed again, the tab then holds the hibernated state of the note until it is next displayed.
+ * 
+ * @author Pyves
+ *
+ */
+class NoteTab {
+
+	// Identifier of the note in the note store.
+	private final String id;
+	// Title of the note, without lock symbol.
+	private String title;
+	// Editable state of the note, used while the note widget does not exist.
+	private boolean editable;
+	// Note widget, null if not created yet or hibernated.
+	private Note note;
+	// State of the note while hibernated, null otherwise.
+	private HibernatedNote hibernatedNote;
+	// Last time the note was displayed, in milliseconds.
+	private long lastUsed;
+	// Preferences that changed while the note was hidden, applied when the tab is next displayed.
+	private final Set<String> pendingPreferences = new HashSet<>();
+
+	NoteTab(String id, String title, boolean editable) {
+		this.id = id;
+		this.title = title;
+		this.editable = editable;
+	}
+
+	String getId() {
+		return id;
+	}
+
+	String getTitle() {
+		return title;
+	}
+
+	void setTitle(String title) {
+		this.title = title;
+	}
+
+	Note getNote() {
+		return note;
+	}
+
+	/**
+	 * Sets the note widget of this tab, discarding any hibernated state.
+	 * 
+	 * @param note
+	 */
+	void setNote(Note note) {
+		this.note = note;
+		hibernatedNote = null;
+		// A new note applies all the preferences.
+		pendingPreferences.clear();
+		lastUsed = System.currentTimeMillis();
+	}
+
+	/**
+	 * Replaces the note widget of this tab, if any, by its hibernated state. The widget must then be disposed by the
+	 * caller.
+	 * 
+	 * @param hibernatedNote
+	 */
+	void hibernate(HibernatedNote hibernatedNote) {
+		if (note != null) {
+			editable = note.getEditable();
+		}
+		note = null;
+		this.hibernatedNote = hibernatedNote;
+		pendingPreferences.clear();
+	}
+
+	HibernatedNote getHibernatedNote() {
+		return hibernatedNote;
+	}
+
+	/**
+	 * Records that the note is currently displayed.
+	 * 
+	 * @param time in milliseconds
+	 */
+	void markUsed(long time) {
+		lastUsed = time;
+	}
+
+	long getLastUsed() {
+		return lastUsed;
+	}
+
+	/**
+	 * Indicates whether the note widget of this tab has been created.
+	 * 
+	 * @return true if the note exists, false otherwise
+	 */
+	boolean isNoteCreated() {
+		return note != null;
+	}
+
+	/**
+	 * Records preferences to apply to the note when the tab is next displayed.
+	 * 
+	 * @param changedKeys
+	 */
+	void addPendingPreferences(Set<String> changedKeys) {
+		if (note != null) {
+			pendingPreferences.addAll(changedKeys);
+		}
+	}
+
+	/**
+	 * Applies the preferences that changed while the note was hidden.
+	 */
+	void applyPendingPreferences() {
+		if (note != null && !pendingPreferences.isEmpty()) {
+			note.setParametersFromPreferences(pendingPreferences);
+			pendingPreferences.clear();
+		}
+	}
+
+	boolean isEditable() {
+		return note == null ? editable : note.getEditable();
+	}
+}
@@ -1,15 +1,30 @@
 package io.github.pyvesb.notepad4e.views;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import org.eclipse.core.runtime.FileLocator;
-import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.IJobChangeEvent;
 import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobChangeAdapter;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
@@ -19,17 +34,18 @@ import org.eclipse.jface.action.IMenuManager;
 import org.eclipse.jface.action.IToolBarManager;
 import org.eclipse.jface.action.Separator;
 import org.eclipse.jface.bindings.Binding;
-import org.eclipse.jface.dialogs.IDialogSettings;
 import org.eclipse.jface.dialogs.InputDialog;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.preference.PreferenceDialog;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.jface.util.Geometry;
+import org.eclipse.jface.window.Window;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.CTabFolder;
 import org.eclipse.swt.custom.CTabFolder2Adapter;
 import org.eclipse.swt.custom.CTabFolderEvent;
 import org.eclipse.swt.custom.CTabItem;
+import org.eclipse.swt.custom.StyleRange;
 import org.eclipse.swt.dnd.Clipboard;
 import org.eclipse.swt.dnd.DND;
 import org.eclipse.swt.dnd.TextTransfer;
@@ -41,7 +57,12 @@ import org.eclipse.swt.graphics.Point;
 import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.program.Program;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.DirectoryDialog;
 import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.FileDialog;
+import org.eclipse.swt.widgets.Menu;
+import org.eclipse.swt.widgets.MenuItem;
+import org.eclipse.swt.widgets.Shell;
 import org.eclipse.swt.widgets.Tracker;
 import org.eclipse.ui.IActionBars;
 import org.eclipse.ui.PlatformUI;
@@ -55,8 +76,27 @@ import io.github.pyvesb.notepad4e.Notepad4e;
 import io.github.pyvesb.notepad4e.preferences.Preferences;
 import io.github.pyvesb.notepad4e.strings.LocalStrings;
 import io.github.pyvesb.notepad4e.utils.AbstractSelectedNoteAction;
+import io.github.pyvesb.notepad4e.utils.AutosaveScheduler;
+import io.github.pyvesb.notepad4e.utils.HibernatedNote;
+import io.github.pyvesb.notepad4e.utils.NoteArchiveJob;
+import io.github.pyvesb.notepad4e.utils.NoteHibernationJob;
+import io.github.pyvesb.notepad4e.utils.NoteHibernationJob.IdleNote;
+import io.github.pyvesb.notepad4e.utils.NoteImportJob;
+import io.github.pyvesb.notepad4e.utils.NoteImportJob.ImportedFile;
+import io.github.pyvesb.notepad4e.utils.NoteIndexJob;
+import io.github.pyvesb.notepad4e.utils.NoteJournal;
+import io.github.pyvesb.notepad4e.utils.NoteJournal.Record;
+import io.github.pyvesb.notepad4e.utils.NoteJournal.Type;
+import io.github.pyvesb.notepad4e.utils.NoteSnapshot;
+import io.github.pyvesb.notepad4e.utils.NoteStore;
+import io.github.pyvesb.notepad4e.utils.NoteStore.IndexEntry;
+import io.github.pyvesb.notepad4e.utils.NoteStore.NoteBody;
 import io.github.pyvesb.notepad4e.utils.NotepadAction;
+import io.github.pyvesb.notepad4e.utils.SaveCoordinator;
+import io.github.pyvesb.notepad4e.utils.SearchIndex;
+import io.github.pyvesb.notepad4e.utils.SearchIndex.NoteTokens;
 import io.github.pyvesb.notepad4e.utils.ShortcutHandler;
+import io.github.pyvesb.notepad4e.utils.TitleIndex;
 
 /**
  * Class handling the plugin's view with the different note tabs.
@@ -67,22 +107,42 @@ import io.github.pyvesb.notepad4e.utils.ShortcutHandler;
 public class NotepadView extends ViewPart implements IPreferenceChangeListener {
 
 	private static final String LOCK_PREFIX = "\uD83D\uDD12 ";
+	// Interval between two checks for notes to hibernate.
+	private static final int HIBERNATION_CHECK_INTERVAL = (int) TimeUnit.MINUTES.toMillis(1);
+	// Maximum number of notes listed by the quick switcher for a non-empty query.
+	private static final int MAX_QUICK_SWITCH_RESULTS = 200;
 	// The ID of the view as specified by the extension.
 	public static final String ID = "notepad4e.views.NotepadView";
-	// Keys used to store and retrieve the plugin's view between Eclipse sessions.
-	private static final String STORE_COUNT_KEY = "NumOfTabs";
-	private static final String STORE_TEXT_PREFIX_KEY = "TabText";
-	private static final String STORE_STYLE_PREFIX_KEY = "TabStyle";
-	private static final String STORE_TITLE_PREFIX_KEY = "TabTitle";
-	private static final String STORE_EDITABLE_PREFIX_KEY = "TabEditable";
-	private static final String STORE_BULLETS_PREFIX_KEY = "TabBullets";
 
 	// Keyboard events listener.
 	private final ShortcutHandler shortcutHandler = new ShortcutHandler(this);
+	// Words contained in the notes, used to search across notes.
+	private final SearchIndex searchIndex = new SearchIndex();
+	// Titles of the notes, used to give new notes unique titles and to find notes by title.
+	private final TitleIndex titleIndex = new TitleIndex();
+	// Tabs of the opened notes, by note ID.
+	private final Map<String, CTabItem> tabsById = new HashMap<>();
+	// Job adding the notes missing from the search index, null if none was started.
+	private NoteIndexJob indexJob;
+	// Job computing the hibernated state of idle notes, null if none was started.
+	private NoteHibernationJob hibernationJob;
+	// Search dialog currently opened, null if none.
+	private SearchDialog openedSearchDialog;
+	// Set when the view is being disposed.
+	private boolean closing;
+	// Tab currently displaying a lock symbol, null if none.
+	private CTabItem lockedTab;
+	// Periodically hibernates the notes that have not been displayed for a while.
+	private final Runnable hibernationCheck = this::hibernateIdleNotes;
+
+	// Menu shared by all notes (mouse right-click).
+	private Menu noteMenu;
 
 	// Actions corresponding to the different buttons in the view.
 	private Action addNewNoteAction;
 	private Action clearNoteAction;
+	private Action searchNotesAction;
+	private Action quickSwitchAction;
 	private Action boldTextAction;
 	private Action italicTextAction;
 	private Action underlineTextAction;
@@ -91,6 +151,9 @@ public class NotepadView extends ViewPart implements IPreferenceChangeListener {
 	private Action clearTextStyleAction;
 	private Action toggleEditableAction;
 	private Action exportNoteAction;
+	private Action exportAllNotesAction;
+	private Action importFilesAction;
+	private Action importDirectoryAction;
 	private Action preferencesAction;
 	private Action websiteAction;
 	private Action changelogAction;
@@ -100,8 +163,13 @@ public class NotepadView extends ViewPart implements IPreferenceChangeListener {
 	private CTabFolder tabFolder;
 	// Current clipboard, used for the paste contents of clipboard in new notes feature.
 	private Clipboard clipboard;
-	// Note autosave interval.
-	private long saveIntervalMillis;
+	// Decides when notes are automatically saved.
+	private AutosaveScheduler autosaveScheduler;
+	// Preferences changed since the notes were last refreshed, applied in a single batch by the UI thread.
+	private final Set<String> changedPreferences = new HashSet<>();
+	// Indicates whether tabs were added, closed, swapped or renamed since the plugin state was last saved, in which
+	// case the index of the note store must be written again.
+	private boolean tabsModified;
 
 	/**
 	 * Allows to create the viewer and initialise it.
@@ -114,29 +182,28 @@ public class NotepadView extends ViewPart implements IPreferenceChangeListener {
 
 		clipboard = new Clipboard(Display.getCurrent());
 
-		tabFolder = new CTabFolder(parent, SWT.MULTI | SWT.WRAP);
+		// Tabs are laid out on a single row; tabs that do not fit are reached through the quick switcher.
+		tabFolder = new CTabFolder(parent, SWT.MULTI);
+		noteMenu = createNoteMenu();
+		autosaveScheduler = new AutosaveScheduler(Display.getCurrent(), () -> savePluginState(false),
+				getSaveIntervalMillis());
 
 		addPluginDisposeListener();
 		addCloseTabListener();
+		addShowListListener();
 		addSwapTabListener();
 		addRenameTabListener();
 		addTabSelectionListener();
 
+		// Other views using the same store keep their notes in its index, and their modifications in its journal.
+		Notepad4e.getDefault().getSaveCoordinator().attach(this, Notepad4e.getDefault().getNoteStore());
 		restoreViewFromPreviousSession();
-
-		saveIntervalMillis = TimeUnit.SECONDS
-				.toMillis(preferences.getInt(Preferences.SAVE_INTERVAL, Preferences.SAVE_INTERVAL_DEFAULT));
-		if (saveIntervalMillis >= 0) {
-			new Job("Notepad4e scheduled autosave") {
-				@Override
-				protected IStatus run(IProgressMonitor monitor) {
-					Display.getDefault().asyncExec(() -> savePluginState(preferences.get(Preferences.SAVE_LOCATION,
-							Preferences.SAVE_LOCATION_DEFAULT)));
-					schedule(saveIntervalMillis);
-					return Status.OK_STATUS;
-				}
-			}.schedule(saveIntervalMillis);
-		}
+		// Restored tabs match what is already saved.
+		tabsModified = false;
+		autosaveScheduler.saved();
+		// Recover modifications that were not saved, for instance if Eclipse was killed.
+		replayJournal();
+		Display.getCurrent().timerExec(HIBERNATION_CHECK_INTERVAL, hibernationCheck);
 
 		PlatformUI.getWorkbench().getHelpSystem().setHelp(tabFolder, "Notepad4e.viewer");
 
@@ -160,32 +227,91 @@ public class NotepadView extends ViewPart implements IPreferenceChangeListener {
 	 */
 	@Override
 	public void dispose() {
+		closing = true;
 		shortcutHandler.dispose();
+		autosaveScheduler.dispose();
+		tabFolder.getDisplay().timerExec(-1, hibernationCheck);
+		if (indexJob != null) {
+			indexJob.cancel();
+		}
+		if (hibernationJob != null) {
+			hibernationJob.cancel();
+		}
+		// Saves synchronously, after which the journal is no longer needed.
 		tabFolder.dispose();
+		Notepad4e.getDefault().getSaveCoordinator().detach(this);
+		// Disposed along with the tab folder if a note was still using it.
+		if (!noteMenu.isDisposed()) {
+			noteMenu.dispose();
+		}
+		Notepad4e.getDefault().getNoteStore().getJournal().close();
 		clipboard.dispose();
 		preferences.removePreferenceChangeListener(this);
 		super.dispose();
 	}
 
 	/**
-	 * Refreshes all notes when a change in the plugin's preferences is detected.
+	 * Refreshes notes when a change in the plugin's preferences is detected. Changes are coalesced, for instance when
+	 * several fields are applied at once from the preferences page, and only the changed properties are refreshed.
 	 * 
 	 * @param event
 	 */
 	@Override
 	public void preferenceChange(PreferenceChangeEvent event) {
-		if (Preferences.SAVE_LOCATION.equals(event.getKey())) {
-			savePluginState((String) event.getOldValue());
-			// Load dialog settings using new location.
-			Notepad4e.getDefault().restoreDialogSettings();
-			// This will merge newly restored dialog settings with current state of notes.
+		if (Note.APPEARANCE_PREFERENCES.contains(event.getKey())) {
+			synchronized (changedPreferences) {
+				// Refresh already scheduled if other changes are pending.
+				if (changedPreferences.isEmpty()) {
+					Display.getDefault().asyncExec(this::applyChangedPreferences);
+				}
+				changedPreferences.add(event.getKey());
+			}
+		} else if (Preferences.SAVE_INTERVAL.equals(event.getKey())) {
+			autosaveScheduler.setMaxStaleness(getSaveIntervalMillis());
+		} else if (Preferences.SAVE_LOCATION.equals(event.getKey())) {
+			// Save to the store corresponding to the previous location. Notes not displayed yet only exist in that
+			// store and must therefore be created before switching.
+			createAllNotes();
+			savePluginState(true);
+			Notepad4e.getDefault().getNoteStore().getJournal().close();
+			// Open the store using new location.
+			Notepad4e.getDefault().restoreNoteStore();
+			// Further modifications of existing notes must be recorded in the journal of the new store.
+			NoteJournal journal = Notepad4e.getDefault().getNoteStore().getJournal();
+			for (int tabIndex = 0; tabIndex < tabFolder.getItemCount(); ++tabIndex) {
+				NoteTab noteTab = getNoteTab(tabFolder.getItem(tabIndex));
+				if (noteTab.isNoteCreated()) {
+					noteTab.getNote().attachJournal(journal, noteTab.getId(), noteTab.getNote().getJournalSequence());
+				}
+			}
+			// This will merge newly restored notes with current state of notes.
 			restoreViewFromPreviousSession();
+			// Notes that were not restored from the new location do not have bodies in the corresponding store and
+			// will therefore be saved in full, the index must also be rewritten.
+			markTabsModified();
+		}
+	}
+
+	/**
+	 * Applies the pending preference changes to the selected note; other notes are refreshed when next displayed and
+	 * notes not created yet will pick up the new preferences when created.
+	 */
+	private void applyChangedPreferences() {
+		Set<String> changedKeys;
+		synchronized (changedPreferences) {
+			changedKeys = new HashSet<>(changedPreferences);
+			changedPreferences.clear();
+		}
+		if (tabFolder.isDisposed()) {
+			return;
 		}
 		for (int tabIndex = 0; tabIndex < tabFolder.getItemCount(); ++tabIndex) {
-			getNote(tabIndex).setParametersFromPreferences();
+			getNoteTab(tabFolder.getItem(tabIndex)).addPendingPreferences(changedKeys);
+		}
+		CTabItem selectedTab = tabFolder.getSelection();
+		if (selectedTab != null) {
+			getNoteTab(selectedTab).applyPendingPreferences();
 		}
-		saveIntervalMillis = TimeUnit.SECONDS
-				.toMillis(preferences.getInt(Preferences.SAVE_INTERVAL, Preferences.SAVE_INTERVAL_DEFAULT));
 	}
 
 	/**
@@ -197,9 +323,9 @@ public class NotepadView extends ViewPart implements IPreferenceChangeListener {
 			// Give focus to the plugin; hack-ish trick to "steal" focus from other elements in some scenarios (example:
 			// no tabs and try to open view again via quick access).
 			tabFolder.getAccessible().getControl().setFocus();
-		} else {
-			// Set focus on the last item in the tabs folder component.
-			tabFolder.getItem(tabFolder.getItemCount() - 1).getControl().setFocus();
+		} else if (getSelectedNote() != null) {
+			// Set focus on the selected item in the tabs folder component.
+			getSelectedNote().setFocus();
 		}
 	}
 
@@ -214,13 +340,10 @@ public class NotepadView extends ViewPart implements IPreferenceChangeListener {
 			noteText = (String) clipboard.getContents(TextTransfer.getInstance(), DND.CLIPBOARD);
 		}
 		// Add a new note tab with a number appended to its name (Note 1, Note 2, Note 3, etc.).
-		addNewNoteTab(noteTitle, noteText, null, true, null);
-		CTabItem previousSelectedTab = tabFolder.getSelection();
-		// Remove lock for currently selected tab.
-		if (previousSelectedTab != null && previousSelectedTab.getText().startsWith(LOCK_PREFIX)) {
-			previousSelectedTab.setText(previousSelectedTab.getText().substring(LOCK_PREFIX.length()));
-		}
+		addNewNoteTab(NoteStore.createNoteId(), noteTitle, noteText, null, true, null);
 		tabFolder.setSelection(tabFolder.getItemCount() - 1);
+		// Programmatic selections do not notify listeners, the lock of the previously selected tab must be removed.
+		updateLockSymbols(tabFolder.getSelection());
 	}
 
 	/**
@@ -251,75 +374,569 @@ public class NotepadView extends ViewPart implements IPreferenceChangeListener {
 		return tabFolder.getSelectionIndex() >= 0 ? getNote(tabFolder.getSelectionIndex()) : null;
 	}
 
+	/**
+	 * Opens a dialog to find a note by title, and displays the chosen note.
+	 */
+	public void openQuickSwitchDialog() {
+		QuickSwitchDialog quickSwitchDialog = new QuickSwitchDialog(getSite().getShell(), this);
+		if (quickSwitchDialog.open() == Window.OK && quickSwitchDialog.getSelectedId() != null) {
+			Note note = showNote(quickSwitchDialog.getSelectedId());
+			if (note != null) {
+				note.setFocus();
+			}
+		}
+	}
+
+	/**
+	 * Finds the notes whose title matches a query. If the query is empty, all notes are returned, the most recently
+	 * displayed ones first.
+	 * 
+	 * @param query
+	 * @return IDs of the matching notes, best matches first
+	 */
+	List<String> findNotes(String query) {
+		if (!query.trim().isEmpty()) {
+			return titleIndex.search(query, MAX_QUICK_SWITCH_RESULTS);
+		}
+		List<NoteTab> noteTabs = new ArrayList<>(tabFolder.getItemCount());
+		for (int tabIndex = 0; tabIndex < tabFolder.getItemCount(); ++tabIndex) {
+			noteTabs.add(getNoteTab(tabFolder.getItem(tabIndex)));
+		}
+		// Sorting is stable, notes that were never displayed remain in tab order.
+		noteTabs.sort(Comparator.comparingLong(NoteTab::getLastUsed).reversed());
+		return noteTabs.stream().map(NoteTab::getId).collect(Collectors.toList());
+	}
+
+	/**
+	 * Opens a dialog to search for words across all notes, and displays the chosen result.
+	 */
+	public void openSearchDialog() {
+		SearchDialog searchDialog = new SearchDialog(getSite().getShell(), this);
+		openedSearchDialog = searchDialog;
+		indexMissingNotes();
+		try {
+			if (searchDialog.open() == Window.OK && searchDialog.getSelectedResult() != null) {
+				showSearchResult(searchDialog.getSelectedResult().getId(), searchDialog.getQuery());
+			}
+		} finally {
+			openedSearchDialog = null;
+		}
+	}
+
+	/**
+	 * Exports all notes to a ZIP archive chosen by the user. The archive is written from the note store in a background
+	 * job, after the latest modifications have been saved.
+	 */
+	public void exportAllNotes() {
+		Shell shell = getSite().getShell();
+		FileDialog fileDialog = new FileDialog(shell, SWT.SAVE);
+		fileDialog.setText(LocalStrings.dialogExportTitle);
+		fileDialog.setFilterExtensions(new String[] { "*.zip" });
+		String fileName = fileDialog.open();
+		// Invalid name specified.
+		if (fileName == null || fileName.isEmpty()) {
+			return;
+		}
+
+		File file = new File(fileName);
+		if (file.exists() && !MessageDialog.openQuestion(shell, LocalStrings.dialogOverwriteTitle,
+				LocalStrings.dialogOverwriteMsg)) {
+			return;
+		}
+		// Queue the modifications that are not saved yet, the job waits for them to be written.
+		savePluginState(false);
+		NoteArchiveJob archiveJob = new NoteArchiveJob(Notepad4e.getDefault().getNoteStore(), file);
+		Display display = shell.getDisplay();
+		archiveJob.addJobChangeListener(new JobChangeAdapter() {
+			@Override
+			public void done(IJobChangeEvent event) {
+				// Errors are reported and logged by the platform, cancellations do not need to be reported.
+				if (event.getResult().isOK() && !display.isDisposed()) {
+					display.asyncExec(() -> {
+						if (!shell.isDisposed()) {
+							MessageDialog.openInformation(shell, LocalStrings.dialogExportedAllTitle,
+									LocalStrings.dialogExportedAllMsg);
+						}
+					});
+				}
+			}
+		});
+		archiveJob.schedule();
+	}
+
+	/**
+	 * Imports files chosen by the user into new notes.
+	 */
+	public void importFiles() {
+		FileDialog fileDialog = new FileDialog(getSite().getShell(), SWT.OPEN | SWT.MULTI);
+		fileDialog.setText(LocalStrings.dialogImportTitle);
+		if (fileDialog.open() == null) {
+			return;
+		}
+		List<File> files = new ArrayList<>();
+		for (String fileName : fileDialog.getFileNames()) {
+			files.add(new File(fileDialog.getFilterPath(), fileName));
+		}
+		importNotes(files);
+	}
+
+	/**
+	 * Imports all the files of a directory chosen by the user into new notes.
+	 */
+	public void importDirectory() {
+		DirectoryDialog directoryDialog = new DirectoryDialog(getSite().getShell());
+		directoryDialog.setText(LocalStrings.dialogImportTitle);
+		String directoryName = directoryDialog.open();
+		if (directoryName != null) {
+			importNotes(Collections.singletonList(new File(directoryName)));
+		}
+	}
+
+	/**
+	 * Decodes files in a background job and adds a note for each of them, in batches.
+	 * 
+	 * @param files files or directories to import
+	 */
+	private void importNotes(List<File> files) {
+		new NoteImportJob(files, tabFolder.getDisplay(), Notepad4e.getDefault().getNoteStore().getJournal(),
+				this::addImportedNotes).schedule();
+	}
+
+	/**
+	 * Adds a tab for each imported file, without changing the selected note if there is one. The notes were recorded in
+	 * the journal by the import job, their widgets are only created when they are first displayed.
+	 * 
+	 * @param importedFiles
+	 * @return false if the view was closed, true otherwise
+	 */
+	private boolean addImportedNotes(List<ImportedFile> importedFiles) {
+		if (tabFolder.isDisposed()) {
+			return false;
+		}
+		// Lay out the tab folder once for the whole batch.
+		tabFolder.setRedraw(false);
+		try {
+			for (ImportedFile importedFile : importedFiles) {
+				CTabItem tab = addNoteTab(importedFile.getId(), importedFile.getName(), true);
+				getNoteTab(tab).hibernate(importedFile.getHibernatedNote());
+			}
+			if (tabFolder.getSelectionIndex() < 0) {
+				// Programmatic selections do not notify listeners, the note must be created.
+				createNote(tabFolder.getItem(0));
+				tabFolder.setSelection(0);
+			}
+		} finally {
+			tabFolder.setRedraw(true);
+		}
+		return true;
+	}
+
+	/**
+	 * Searches for notes containing the words of a query.
+	 * 
+	 * @param query
+	 * @return matching notes, the most relevant first
+	 */
+	List<SearchIndex.Result> search(String query) {
+		return searchIndex.search(query);
+	}
+
+	/**
+	 * Returns the title of a note, without lock symbol.
+	 * 
+	 * @param id
+	 * @return the title, or an empty string if no tab corresponds to the note
+	 */
+	String getNoteTitle(String id) {
+		String title = titleIndex.getTitle(id);
+		return title == null ? "" : title;
+	}
+
 	/**
 	 * Constructs the title of a new note. The title does not match the ones of extisting notes.
 	 * 
 	 * @return the note title, for instance "Note 2"
 	 */
 	private String getNewNoteTitle() {
-		int noteNumber = tabFolder.getItemCount() + 1;
-		String title = preferences.get(Preferences.NAME_PREFIX, Preferences.NAME_PREFIX_DEFAULT) + " " + noteNumber;
-		if (tabFolder.getItemCount() == 0) {
-			return title;
+		String prefix = preferences.get(Preferences.NAME_PREFIX, Preferences.NAME_PREFIX_DEFAULT);
+		return titleIndex.allocate(prefix, tabFolder.getItemCount() + 1);
+	}
+
+	/**
+	 * Returns the model of a given tab.
+	 * 
+	 * @param tab
+	 * @return the NoteTab associated with the tab
+	 */
+	private NoteTab getNoteTab(CTabItem tab) {
+		return (NoteTab) tab.getData();
+	}
+
+	/**
+	 * Returns the tab of a note given its ID.
+	 * 
+	 * @param id
+	 * @return the tab, or null if the note is not opened
+	 */
+	private CTabItem findTab(String id) {
+		return tabsById.get(id);
+	}
+
+	/**
+	 * Selects the tab of a note matching a search and selects the first occurrence of the query in the note.
+	 * 
+	 * @param id
+	 * @param query
+	 */
+	private void showSearchResult(String id, String query) {
+		Note note = showNote(id);
+		if (note == null) {
+			return;
 		}
-		while (true) {
-			for (int tabIndex = 0; tabIndex < tabFolder.getItemCount(); ++tabIndex) {
-				if (tabFolder.getItem(tabIndex).getText().contains(title)) {
-					break;
-				} else if (tabIndex == tabFolder.getItemCount() - 1) {
-					return title;
-				}
+		int[] occurrence = SearchIndex.findOccurrence(note.getContent(), query);
+		if (occurrence != null) {
+			note.setSelection(occurrence[0], occurrence[0] + occurrence[1]);
+		}
+		note.setFocus();
+	}
+
+	/**
+	 * Selects the tab of a note, creating the note if needed.
+	 * 
+	 * @param id
+	 * @return the note, or null if it is not opened
+	 */
+	private Note showNote(String id) {
+		CTabItem tab = findTab(id);
+		if (tab == null) {
+			return null;
+		}
+		Note note = createNote(tab);
+		tabFolder.setSelection(tab);
+		// Programmatic selections do not notify listeners.
+		getNoteTab(tab).markUsed(System.currentTimeMillis());
+		updateLockSymbols(tab);
+		getNoteTab(tab).applyPendingPreferences();
+		return note;
+	}
+
+	/**
+	 * Adds the notes that are not yet in the search index in a background job, by reading their contents from their
+	 * hibernated state or from the note store. Does nothing if such a job is already running.
+	 */
+	private void indexMissingNotes() {
+		if (indexJob != null && indexJob.getState() != Job.NONE) {
+			return;
+		}
+		Map<String, HibernatedNote> missingNotes = new LinkedHashMap<>();
+		for (int tabIndex = 0; tabIndex < tabFolder.getItemCount(); ++tabIndex) {
+			NoteTab noteTab = getNoteTab(tabFolder.getItem(tabIndex));
+			if (!searchIndex.contains(noteTab.getId())) {
+				// Imported notes are only hibernated until they are first displayed and saved.
+				missingNotes.put(noteTab.getId(), noteTab.getHibernatedNote());
+			}
+		}
+		if (!missingNotes.isEmpty()) {
+			indexJob = new NoteIndexJob(missingNotes, Notepad4e.getDefault().getNoteStore(), tabFolder.getDisplay(),
+					this::addIndexedNotes);
+			indexJob.schedule();
+		}
+	}
+
+	/**
+	 * Adds notes tokenised by the index job to the search index and refreshes the results of the search dialog.
+	 * 
+	 * @param indexedNotes
+	 * @return false if the view was closed, true otherwise
+	 */
+	private boolean addIndexedNotes(Map<String, NoteTokens> indexedNotes) {
+		if (tabFolder.isDisposed()) {
+			return false;
+		}
+		for (Entry<String, NoteTokens> indexedNote : indexedNotes.entrySet()) {
+			// Notes closed in the meantime are no longer in the title index.
+			if (titleIndex.getTitle(indexedNote.getKey()) != null) {
+				searchIndex.add(indexedNote.getKey(), indexedNote.getValue());
+			}
+		}
+		if (openedSearchDialog != null) {
+			openedSearchDialog.refreshResults();
+		}
+		return true;
+	}
+
+	/**
+	 * Loads the search index saved alongside the notes, for the notes that are not yet indexed.
+	 */
+	private void loadSearchIndex() {
+		NoteStore noteStore = Notepad4e.getDefault().getNoteStore();
+		Set<String> ids = new HashSet<>();
+		for (int tabIndex = 0; tabIndex < tabFolder.getItemCount(); ++tabIndex) {
+			ids.add(getNoteTab(tabFolder.getItem(tabIndex)).getId());
+		}
+		try {
+			byte[] savedSearchIndex = noteStore.readSearchIndex();
+			if (savedSearchIndex != null) {
+				searchIndex.load(savedSearchIndex, ids, noteStore);
 			}
-			++noteNumber;
-			title = preferences.get(Preferences.NAME_PREFIX, Preferences.NAME_PREFIX_DEFAULT) + " " + noteNumber;
+		} catch (IOException | RuntimeException e) {
+			// Notes missing from the index will be indexed again when searching.
+			Notepad4e.getDefault().getLog()
+					.log(new Status(IStatus.WARNING, Notepad4e.PLUGIN_ID, LocalStrings.searchIndexErrorMsg, e));
 		}
 	}
 
 	/**
-	 * Returns a Note object given an index in the tab folder.
+	 * Returns a Note object given an index in the tab folder. The note is created if it was not previously displayed.
 	 * 
 	 * @param index
 	 * @return Note at the given index
 	 */
 	private Note getNote(int index) {
-		return (Note) (tabFolder.getItem(index).getControl());
+		return createNote(tabFolder.getItem(index));
+	}
+
+	/**
+	 * Creates the note widget of a tab, by reading its contents from the note store. Does nothing if the note already
+	 * exists.
+	 * 
+	 * @param tab
+	 * @return the Note of the tab
+	 */
+	private Note createNote(CTabItem tab) {
+		NoteTab noteTab = getNoteTab(tab);
+		if (!noteTab.isNoteCreated()) {
+			String text = "";
+			StyleRange[] styles = null;
+			int[] bulletLines = null;
+			long journalSequence = 0L;
+			HibernatedNote hibernatedNote = noteTab.getHibernatedNote();
+			try {
+				if (hibernatedNote != null) {
+					text = hibernatedNote.getText();
+					styles = hibernatedNote.getStyles();
+					bulletLines = hibernatedNote.getBulletLines();
+					journalSequence = hibernatedNote.getJournalSequence();
+				} else {
+					NoteBody body = Notepad4e.getDefault().getNoteStore().readBody(noteTab.getId());
+					text = body.getText();
+					styles = body.getStyles();
+					bulletLines = body.getBulletLines();
+					journalSequence = body.getJournalSequence();
+				}
+			} catch (IOException | RuntimeException e) {
+				Notepad4e.getDefault().getLog()
+						.log(new Status(IStatus.ERROR, Notepad4e.PLUGIN_ID, LocalStrings.noteLoadErrorMsg, e));
+			}
+			Note note = new Note(tabFolder, text, styles, bulletLines, noteTab.isEditable());
+			note.setMenu(noteMenu);
+			note.setModificationListener(autosaveScheduler::modified);
+			searchIndex.attach(noteTab.getId(), note.getContent());
+			note.attachJournal(Notepad4e.getDefault().getNoteStore().getJournal(), noteTab.getId(), journalSequence);
+			if (hibernatedNote != null) {
+				note.setCaretOffset(hibernatedNote.getCaretOffset());
+				note.setTopPixel(hibernatedNote.getTopPixel());
+			}
+			noteTab.setNote(note);
+			tab.setControl(note);
+		}
+		return noteTab.getNote();
+	}
+
+	/**
+	 * Disposes the widgets of the notes that have not been displayed for longer than the delay defined in the plugin's
+	 * preferences, keeping their state in a compact form until they are displayed again. The compact form is computed
+	 * by a background job from snapshots of the notes. Reschedules itself.
+	 */
+	private void hibernateIdleNotes() {
+		if (tabFolder.isDisposed()) {
+			return;
+		}
+		tabFolder.getDisplay().timerExec(HIBERNATION_CHECK_INTERVAL, hibernationCheck);
+		if (hibernationJob != null && hibernationJob.getState() != Job.NONE) {
+			return;
+		}
+		long delay = getHibernationDelayMillis();
+		long now = System.currentTimeMillis();
+		List<CTabItem> idleTabs = new ArrayList<>();
+		boolean dirtyNotes = false;
+		for (int tabIndex = 0; tabIndex < tabFolder.getItemCount(); ++tabIndex) {
+			CTabItem tab = tabFolder.getItem(tabIndex);
+			NoteTab noteTab = getNoteTab(tab);
+			if (tab == tabFolder.getSelection()) {
+				noteTab.markUsed(now);
+			} else if (delay > 0 && noteTab.isNoteCreated() && now - noteTab.getLastUsed() >= delay) {
+				idleTabs.add(tab);
+				dirtyNotes |= noteTab.getNote().isDirty();
+			}
+		}
+		if (idleTabs.isEmpty()) {
+			return;
+		}
+		if (dirtyNotes) {
+			// Hibernated notes are never dirty, their modifications are saved beforehand.
+			savePluginState(false);
+		}
+		List<IdleNote> idleNotes = new ArrayList<>(idleTabs.size());
+		for (CTabItem tab : idleTabs) {
+			NoteTab noteTab = getNoteTab(tab);
+			Note note = noteTab.getNote();
+			idleNotes.add(new IdleNote(note.createSnapshot(noteTab.getId()), note.getCaretOffset(), note.getTopPixel()));
+		}
+		hibernationJob = new NoteHibernationJob(idleNotes, tabFolder.getDisplay(), this::swapHibernatedNotes);
+		hibernationJob.schedule();
+	}
+
+	/**
+	 * Replaces the widgets of notes by the hibernated states computed by the hibernation job. Notes that were displayed
+	 * or modified since their snapshot was taken are left as they are.
+	 * 
+	 * @param idleNotes
+	 */
+	private void swapHibernatedNotes(List<IdleNote> idleNotes) {
+		if (closing || tabFolder.isDisposed()) {
+			return;
+		}
+		long delay = getHibernationDelayMillis();
+		long now = System.currentTimeMillis();
+		for (IdleNote idleNote : idleNotes) {
+			CTabItem tab = findTab(idleNote.getSnapshot().getId());
+			if (tab == null || tab == tabFolder.getSelection()) {
+				continue;
+			}
+			NoteTab noteTab = getNoteTab(tab);
+			Note note = noteTab.getNote();
+			if (note != null && !note.isDirty() && note.getJournalSequence() == idleNote.getSnapshot().getJournalSequence()
+					&& delay > 0 && now - noteTab.getLastUsed() >= delay) {
+				noteTab.hibernate(idleNote.getHibernatedNote());
+				tab.setControl(null);
+				note.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Returns the hibernation delay defined in the plugin's preferences.
+	 * 
+	 * @return time after which unused notes are hibernated, 0 if hibernation is disabled
+	 */
+	private long getHibernationDelayMillis() {
+		return TimeUnit.MINUTES
+				.toMillis(preferences.getInt(Preferences.HIBERNATION_DELAY, Preferences.HIBERNATION_DELAY_DEFAULT));
+	}
+
+	/**
+	 * Applies the modifications recorded in the journal since the notes were last saved. Notes created after the last
+	 * save are added back to the view; modified notes are created straight away and marked as dirty.
+	 */
+	private void replayJournal() {
+		Map<String, List<Record>> recordsById = new LinkedHashMap<>();
+		for (Record record : Notepad4e.getDefault().getNoteStore().getJournal().readRecords()) {
+			recordsById.computeIfAbsent(record.getId(), id -> new ArrayList<>()).add(record);
+		}
+		for (Entry<String, List<Record>> noteRecords : recordsById.entrySet()) {
+			CTabItem tab = findTab(noteRecords.getKey());
+			Record firstRecord = noteRecords.getValue().get(0);
+			if (tab == null) {
+				if (firstRecord.getType() != Type.CREATE) {
+					// Note was closed and its tab no longer saved.
+					continue;
+				}
+				// The text of a creation record is the title of the note.
+				tab = addNewNoteTab(noteRecords.getKey(), firstRecord.getText(), "", null, true, null);
+			}
+			try {
+				createNote(tab).replayJournal(noteRecords.getValue());
+			} catch (RuntimeException e) {
+				Notepad4e.getDefault().getLog()
+						.log(new Status(IStatus.ERROR, Notepad4e.PLUGIN_ID, LocalStrings.journalReadErrorMsg, e));
+			}
+		}
+	}
+
+	/**
+	 * Creates the note widgets of all the tabs that were not displayed yet.
+	 */
+	private void createAllNotes() {
+		for (int tabIndex = 0; tabIndex < tabFolder.getItemCount(); ++tabIndex) {
+			createNote(tabFolder.getItem(tabIndex));
+		}
 	}
 
 	/**
 	 * Listens to disposal of the tab folder and saves state for next Eclipse session or when reopening the view.
 	 */
 	private void addPluginDisposeListener() {
-		tabFolder.addDisposeListener(event -> savePluginState(preferences.get(Preferences.SAVE_LOCATION,
-				Preferences.SAVE_LOCATION_DEFAULT)));
+		tabFolder.addDisposeListener(event -> savePluginState(true));
 	}
 
 	/**
-	 * Saves plugin state for next Eclipse session or when reopening the view.
+	 * Saves plugin state for next Eclipse session or when reopening the view. Only the notes modified since the last
+	 * save or missing from the note store are saved again, and nothing is written if no changes were made. Snapshots
+	 * of the notes are taken on the UI thread, serialisation and disk writes are then done by a background job unless
+	 * the save must be synchronous.
 	 * 
-	 * @param directory
+	 * @param synchronous whether to write the state before returning
 	 */
-	private void savePluginState(String directory) {
-		if (!tabFolder.isDisposed()) {
-			IDialogSettings section = Notepad4e.getDefault().getDialogSettings().getSection(ID);
-			section.put(STORE_COUNT_KEY, tabFolder.getItemCount());
-			for (int tabIndex = 0; tabIndex < tabFolder.getItemCount(); ++tabIndex) {
-				CTabItem tab = tabFolder.getItem(tabIndex);
-				if (!tab.isDisposed()) {
-					Note note = getNote(tabIndex);
-					section.put(STORE_TEXT_PREFIX_KEY + tabIndex, note.getText());
-					section.put(STORE_STYLE_PREFIX_KEY + tabIndex, note.serialiseStyle());
-					if (tab.getText().startsWith(LOCK_PREFIX)) {
-						// Do not save lock symbol.
-						section.put(STORE_TITLE_PREFIX_KEY + tabIndex, tab.getText().substring(LOCK_PREFIX.length()));
-					} else {
-						section.put(STORE_TITLE_PREFIX_KEY + tabIndex, tab.getText());
-					}
-					section.put(STORE_EDITABLE_PREFIX_KEY + tabIndex, note.getEditable());
-					section.put(STORE_BULLETS_PREFIX_KEY + tabIndex, note.serialiseBullets());
+	private void savePluginState(boolean synchronous) {
+		if (tabFolder.isDisposed()) {
+			return;
+		}
+		// Whatever happens below, no modification remains unsaved.
+		autosaveScheduler.saved();
+		NoteStore noteStore = Notepad4e.getDefault().getNoteStore();
+		List<IndexEntry> entries = new ArrayList<>(tabFolder.getItemCount());
+		List<NoteSnapshot> snapshots = new ArrayList<>();
+		for (int tabIndex = 0; tabIndex < tabFolder.getItemCount(); ++tabIndex) {
+			CTabItem tab = tabFolder.getItem(tabIndex);
+			if (!tab.isDisposed()) {
+				NoteTab noteTab = getNoteTab(tab);
+				String id = noteTab.getId();
+				entries.add(new IndexEntry(id, noteTab.getTitle(), noteTab.isEditable()));
+				// Notes that were never displayed are unchanged since they were read from the store.
+				Note note = noteTab.getNote();
+				if (note != null && (note.isDirty() || !noteStore.containsBody(id))) {
+					snapshots.add(note.createSnapshot(id));
+					note.clearDirty();
+				} else if (noteTab.getHibernatedNote() != null && !noteStore.containsBody(id)) {
+					// Hibernated notes are saved, unless the save location changed since or they were just imported. The
+					// snapshot refers to the hibernated state, which is only decoded by the save job.
+					snapshots.add(noteTab.getHibernatedNote().createSnapshot(id));
 				}
 			}
-			Notepad4e.getDefault().saveDialogSettings(directory);
 		}
+		if (!tabsModified && snapshots.isEmpty()) {
+			// Nothing changed since the last save.
+			return;
+		}
+		tabsModified = false;
+		// Records appended from now on are not covered by this save.
+		int journalSegment = noteStore.getJournal().rotate();
+
+		// Saves of all views go through the same coordinator, so that writes never overlap.
+		SaveCoordinator saveCoordinator = Notepad4e.getDefault().getSaveCoordinator();
+		saveCoordinator.requestSave(this, noteStore, entries, snapshots, searchIndex.createSnapshot(), journalSegment);
+		if (synchronous) {
+			saveCoordinator.flush();
+		}
+	}
+
+	/**
+	 * Records that the index of the note store must be written again and notifies the autosave scheduler.
+	 */
+	private void markTabsModified() {
+		tabsModified = true;
+		autosaveScheduler.modified();
+	}
+
+	/**
+	 * Returns the autosave interval defined in the plugin's preferences.
+	 * 
+	 * @return maximum time during which modifications can remain unsaved, negative if autosave is disabled
+	 */
+	private long getSaveIntervalMillis() {
+		return TimeUnit.SECONDS
+				.toMillis(preferences.getInt(Preferences.SAVE_INTERVAL, Preferences.SAVE_INTERVAL_DEFAULT));
 	}
 
 	/**
@@ -330,7 +947,7 @@ public class NotepadView extends ViewPart implements IPreferenceChangeListener {
 			@Override
 			public void close(CTabFolderEvent event) {
 				// Selected tab may not be the one being closed, the one provided by the event must be used.
-				if (!getNote(tabFolder.indexOf((CTabItem) event.item)).getEditable()) {
+				if (!getNoteTab((CTabItem) event.item).isEditable()) {
 					event.doit = MessageDialog.openQuestion(getSite().getShell(), LocalStrings.dialogCloseLockedTitle,
 							LocalStrings.dialogCloseLockedMsg);
 				} else if (preferences.getBoolean(Preferences.CLOSE_CONFIRMATION, Preferences.CLOSE_CONFIRMATION_DEFAULT)) {
@@ -341,6 +958,70 @@ public class NotepadView extends ViewPart implements IPreferenceChangeListener {
 		});
 	}
 
+	/**
+	 * Creates the menu triggered by a right-click inside a note. A single menu is shared by all notes and acts on the
+	 * selected note; the enabled state of its items is computed each time it is shown.
+	 * 
+	 * @return the menu
+	 */
+	private Menu createNoteMenu() {
+		Menu menu = new Menu(tabFolder.getShell(), SWT.POP_UP);
+		MenuItem undoItem = addNoteMenuItem(menu, LocalStrings.menuUndo, Note::undo);
+		MenuItem redoItem = addNoteMenuItem(menu, LocalStrings.menuRedo, Note::redo);
+		new MenuItem(menu, SWT.SEPARATOR);
+		MenuItem cutItem = addNoteMenuItem(menu, LocalStrings.menuCut, Note::cut);
+		MenuItem copyItem = addNoteMenuItem(menu, LocalStrings.menuCopy, Note::copy);
+		MenuItem pasteItem = addNoteMenuItem(menu, LocalStrings.menuPaste, Note::paste);
+		new MenuItem(menu, SWT.SEPARATOR);
+		MenuItem selectAllItem = addNoteMenuItem(menu, LocalStrings.menuSelectAll, Note::selectAll);
+		menu.addListener(SWT.Show, event -> {
+			Note note = getSelectedNote();
+			boolean editable = note != null && note.getEditable();
+			boolean textSelected = note != null && note.getSelectionCount() > 0;
+			undoItem.setEnabled(note != null && note.canUndo());
+			redoItem.setEnabled(note != null && note.canRedo());
+			cutItem.setEnabled(editable && textSelected);
+			copyItem.setEnabled(textSelected);
+			pasteItem.setEnabled(editable);
+			selectAllItem.setEnabled(note != null && note.getCharCount() > 0);
+		});
+		return menu;
+	}
+
+	/**
+	 * Adds an item to the note menu.
+	 * 
+	 * @param menu
+	 * @param text
+	 * @param noteAction action performed on the selected note
+	 * @return the menu item
+	 */
+	private MenuItem addNoteMenuItem(Menu menu, String text, Consumer<Note> noteAction) {
+		MenuItem menuItem = new MenuItem(menu, SWT.NONE);
+		menuItem.setText(text);
+		menuItem.addListener(SWT.Selection, event -> {
+			Note note = getSelectedNote();
+			if (note != null) {
+				noteAction.accept(note);
+			}
+		});
+		return menuItem;
+	}
+
+	/**
+	 * Opens the quick switcher instead of the list of hidden tabs when the user clicks on the chevron, as a menu listing
+	 * thousands of tabs would be both slow to build and unusable.
+	 */
+	private void addShowListListener() {
+		tabFolder.addCTabFolder2Listener(new CTabFolder2Adapter() {
+			@Override
+			public void showList(CTabFolderEvent event) {
+				event.doit = false;
+				openQuickSwitchDialog();
+			}
+		});
+	}
+
 	/**
 	 * Allows to rename a tab when user double clicks on its title.
 	 */
@@ -352,23 +1033,18 @@ public class NotepadView extends ViewPart implements IPreferenceChangeListener {
 				if (clickedTab == null) {
 					return;
 				}
-				boolean isLocked = false;
-				String dialogText = clickedTab.getText();
-				if (dialogText.startsWith(LOCK_PREFIX)) {
-					isLocked = true;
-					dialogText = dialogText.substring(LOCK_PREFIX.length());
-				}
+				NoteTab noteTab = getNoteTab(clickedTab);
+				String dialogText = noteTab.getTitle();
 				// Open a dialog window so user can enter the new name of his note.
 				InputDialog inputDialog = new InputDialog(null, LocalStrings.dialogRenameTitle,
 						LocalStrings.dialogRenameMsg, dialogText, null);
 				inputDialog.open();
 				// If user selected Cancel, text will be null.
 				if (inputDialog.getValue() != null && !inputDialog.getValue().isEmpty()) {
-					if (isLocked) {
-						clickedTab.setText(LOCK_PREFIX + inputDialog.getValue());
-					} else {
-						clickedTab.setText(inputDialog.getValue());
-					}
+					markTabsModified();
+					titleIndex.rename(noteTab.getId(), inputDialog.getValue());
+					noteTab.setTitle(inputDialog.getValue());
+					renderTitle(clickedTab);
 				}
 			}
 		});
@@ -415,85 +1091,150 @@ public class NotepadView extends ViewPart implements IPreferenceChangeListener {
 		tabFolder.addSelectionListener(new SelectionAdapter() {
 			@Override
 			public void widgetSelected(SelectionEvent event) {
-				// Remove lock symbols from all tabs.
-				for (int tabIndex = 0; tabIndex < tabFolder.getItemCount(); ++tabIndex) {
-					CTabItem tab = tabFolder.getItem(tabIndex);
-					if (tab.getText().startsWith(LOCK_PREFIX)) {
-						tab.setText(tab.getText().substring(LOCK_PREFIX.length()));
-					}
-				}
-				// Put lock symbol on selected tab, if non editable.
-				if (!getSelectedNote().getEditable()) {
-					CTabItem selectedTab = (CTabItem) event.item;
-					selectedTab.setText(LOCK_PREFIX + selectedTab.getText());
-				}
+				// Create the note if the tab is displayed for the first time or was hibernated.
+				createNote((CTabItem) event.item);
+				getNoteTab((CTabItem) event.item).markUsed(System.currentTimeMillis());
+				getNoteTab((CTabItem) event.item).applyPendingPreferences();
+				updateLockSymbols((CTabItem) event.item);
 			}
 		});
 	}
 
+	/**
+	 * Displays a lock symbol on the selected tab if its note is non editable, and removes the one displayed on the
+	 * previously locked tab. Only these two tabs are rendered again, whatever the number of tabs.
+	 * 
+	 * @param selectedTab
+	 */
+	private void updateLockSymbols(CTabItem selectedTab) {
+		CTabItem previousLockedTab = lockedTab;
+		lockedTab = getNoteTab(selectedTab).isEditable() ? null : selectedTab;
+		if (previousLockedTab != null && previousLockedTab != lockedTab && !previousLockedTab.isDisposed()) {
+			renderTitle(previousLockedTab);
+		}
+		if (lockedTab != null) {
+			renderTitle(lockedTab);
+		}
+	}
+
+	/**
+	 * Sets the text of a tab from the title of its note, prefixed with a lock symbol if it is the locked tab.
+	 * 
+	 * @param tab
+	 */
+	private void renderTitle(CTabItem tab) {
+		String title = getNoteTab(tab).getTitle();
+		tab.setText(tab == lockedTab ? LOCK_PREFIX + title : title);
+	}
+
 	/**
 	 * Allows to restore the plugin's view as it was in a previous session of Eclipse.
 	 */
 	private void restoreViewFromPreviousSession() {
-		IDialogSettings settings = Notepad4e.getDefault().getDialogSettings();
-		IDialogSettings section = settings.getSection(ID);
-		if (section == null) {
-			section = settings.addNewSection(ID);
+		NoteStore noteStore = Notepad4e.getDefault().getNoteStore();
+		List<IndexEntry> entries;
+		try {
+			entries = noteStore.loadIndex();
+		} catch (IOException | RuntimeException e) {
+			Notepad4e.getDefault().getLog().log(
+					new Status(IStatus.ERROR, Notepad4e.PLUGIN_ID, LocalStrings.getDialogSettingsErrorMsg, e));
+			entries = Collections.emptyList();
 		}
 
-		int numOfTabs = 0;
-		String numOfTabsString = section.get(STORE_COUNT_KEY);
-		// numOfTabsString can be null if plugin was not previously launched in this working environment.
-		if (numOfTabsString != null) {
-			numOfTabs = Integer.parseInt(numOfTabsString);
+		Set<String> openedIds = new HashSet<>();
+		for (int tabIndex = 0; tabIndex < tabFolder.getItemCount(); ++tabIndex) {
+			openedIds.add(getNoteTab(tabFolder.getItem(tabIndex)).getId());
+		}
+		// Populate with tabs opened in previous session. Notes are only read from the store and created when their tabs
+		// are first displayed.
+		for (IndexEntry entry : entries) {
+			// Notes may already be opened when switching back to a previously used save location.
+			if (!openedIds.contains(entry.getId())) {
+				addNoteTab(entry.getId(), entry.getTitle(), entry.isEditable());
+			}
 		}
+		// Must be loaded before notes are created, as notes missing from the search index are indexed when created.
+		loadSearchIndex();
 
-		if (numOfTabs == 0 && tabFolder.getItemCount() == 0) {
+		if (tabFolder.getItemCount() == 0) {
 			// No notes were previously opened: create new one.
 			String prefixName = preferences.get(Preferences.NAME_PREFIX, Preferences.NAME_PREFIX_DEFAULT);
-			addNewNoteTab(prefixName + " 1", "", null, true, null);
+			addNewNoteTab(NoteStore.createNoteId(), prefixName + " 1", "", null, true, null);
 			// Set selection on this tab.
 			tabFolder.setSelection(0);
 		} else {
-			// Populate with tabs opened in previous session.
-			for (int tabIndex = 0; tabIndex < numOfTabs; ++tabIndex) {
-				String tabTitle = section.get(STORE_TITLE_PREFIX_KEY + tabIndex);
-				boolean editable = section.get(STORE_EDITABLE_PREFIX_KEY + tabIndex) == null ? true
-						: section.getBoolean(STORE_EDITABLE_PREFIX_KEY + tabIndex);
-				String noteText = section.get(STORE_TEXT_PREFIX_KEY + tabIndex);
-				String noteStyle = section.get(STORE_STYLE_PREFIX_KEY + tabIndex);
-				String noteBullets = section.get(STORE_BULLETS_PREFIX_KEY + tabIndex);
-				if (tabTitle != null && noteText != null) {
-					addNewNoteTab(tabTitle, noteText, noteStyle, editable, noteBullets);
-				}
-			}
-			// Set selection on the last tab.
+			// Set selection on the last tab; programmatic selections do not notify listeners, the note must be created.
+			createNote(tabFolder.getItem(tabFolder.getItemCount() - 1));
 			tabFolder.setSelection(tabFolder.getItemCount() - 1);
-			if (!getSelectedNote().getEditable()) {
-				tabFolder.getSelection().setText(LOCK_PREFIX + tabFolder.getSelection().getText());
-			}
+			updateLockSymbols(tabFolder.getSelection());
 		}
 	}
 
 	/**
 	 * Adds a new note to the view.
 	 * 
+	 * @param id
 	 * @param title
 	 * @param text
-	 * @param style
+	 * @param styles
 	 * @param editable
-	 * @param bullets
+	 * @param bulletLines
+	 * @return the created tab
 	 */
-	private void addNewNoteTab(String title, String text, String style, boolean editable, String bullets) {
+	private CTabItem addNewNoteTab(String id, String title, String text, StyleRange[] styles, boolean editable,
+			int[] bulletLines) {
+		CTabItem tab = addNoteTab(id, title, editable);
+		Note note = new Note(tabFolder, text, styles, bulletLines, editable);
+		note.setMenu(noteMenu);
+		note.setModificationListener(autosaveScheduler::modified);
+		searchIndex.attach(id, note.getContent());
+		// The note only exists in the journal until the next save.
+		NoteJournal journal = Notepad4e.getDefault().getNoteStore().getJournal();
+		journal.noteCreated(id, title);
+		note.attachJournal(journal, id, 0L);
+		if (!text.isEmpty()) {
+			note.journalText();
+		}
+		getNoteTab(tab).setNote(note);
+		tab.setControl(note);
+		return tab;
+	}
+
+	/**
+	 * Adds a new tab to the view, without creating its note.
+	 * 
+	 * @param id
+	 * @param title
+	 * @param editable
+	 * @return the created tab
+	 */
+	private CTabItem addNoteTab(String id, String title, boolean editable) {
 		CTabItem tab = new CTabItem(tabFolder, SWT.NONE);
 		tab.setText(title);
+		tab.setData(new NoteTab(id, title, editable));
+		titleIndex.add(id, title);
+		tabsById.put(id, tab);
 		// Add listener to clean up corresponding note when disposing the tab.
 		tab.addDisposeListener(event -> {
-			CTabItem itemToDispose = (CTabItem) event.getSource();
-			((Note) itemToDispose.getControl()).dispose();
+			CTabItem disposedTab = (CTabItem) event.getSource();
+			NoteTab noteTab = getNoteTab(disposedTab);
+			titleIndex.remove(noteTab.getId());
+			tabsById.remove(noteTab.getId());
+			if (disposedTab == lockedTab) {
+				lockedTab = null;
+			}
+			searchIndex.remove(noteTab.getId());
+			Note note = noteTab.getNote();
+			if (note != null) {
+				note.dispose();
+			}
+			// Tabs disposed along with the view are part of the state saved when the tab folder was disposed.
+			if (!closing && !tabFolder.isDisposed()) {
+				markTabsModified();
+			}
 		});
-		Note note = new Note(tabFolder, text, style, bullets, editable);
-		tab.setControl(note);
+		markTabsModified();
+		return tab;
 	}
 
 	/**
@@ -513,6 +1254,9 @@ public class NotepadView extends ViewPart implements IPreferenceChangeListener {
 	private void fillLocalPullDown(IMenuManager manager) {
 		manager.add(toggleEditableAction);
 		manager.add(exportNoteAction);
+		manager.add(exportAllNotesAction);
+		manager.add(importFilesAction);
+		manager.add(importDirectoryAction);
 		manager.add(new Separator());
 		manager.add(preferencesAction);
 		manager.add(websiteAction);
@@ -534,6 +1278,8 @@ public class NotepadView extends ViewPart implements IPreferenceChangeListener {
 		manager.add(new Separator());
 		manager.add(addNewNoteAction);
 		manager.add(clearNoteAction);
+		manager.add(quickSwitchAction);
+		manager.add(searchNotesAction);
 	}
 
 	/**
@@ -556,6 +1302,22 @@ public class NotepadView extends ViewPart implements IPreferenceChangeListener {
 		};
 		setTextAndImageToAction(clearNoteAction, NotepadAction.CLEAR_NOTE);
 
+		quickSwitchAction = new Action() {
+			@Override
+			public void run() {
+				openQuickSwitchDialog();
+			}
+		};
+		setTextAndImageToAction(quickSwitchAction, NotepadAction.QUICK_SWITCH);
+
+		searchNotesAction = new Action() {
+			@Override
+			public void run() {
+				openSearchDialog();
+			}
+		};
+		setTextAndImageToAction(searchNotesAction, NotepadAction.SEARCH_NOTES);
+
 		boldTextAction = new AbstractSelectedNoteAction(this) {
 			@Override
 			protected void runSelectedNoteAction(Note selectedNote) {
@@ -607,13 +1369,8 @@ public class NotepadView extends ViewPart implements IPreferenceChangeListener {
 		toggleEditableAction = new AbstractSelectedNoteAction(this) {
 			@Override
 			protected void runSelectedNoteAction(Note selectedNote) {
-				CTabItem tab = tabFolder.getSelection();
-				if (!selectedNote.getEditable()) {
-					tab.setText(tab.getText().substring(LOCK_PREFIX.length()));
-				} else {
-					tab.setText(LOCK_PREFIX + tab.getText());
-				}
 				selectedNote.toggleEditable();
+				updateLockSymbols(tabFolder.getSelection());
 			}
 		};
 		setTextAndImageToAction(toggleEditableAction, NotepadAction.TOGGLE_EDITABLE_NOTE);
@@ -626,6 +1383,30 @@ public class NotepadView extends ViewPart implements IPreferenceChangeListener {
 		};
 		setTextAndImageToAction(exportNoteAction, NotepadAction.EXPORT_NOTE);
 
+		exportAllNotesAction = new Action() {
+			@Override
+			public void run() {
+				exportAllNotes();
+			}
+		};
+		setTextAndImageToAction(exportAllNotesAction, NotepadAction.EXPORT_ALL_NOTES);
+
+		importFilesAction = new Action() {
+			@Override
+			public void run() {
+				importFiles();
+			}
+		};
+		setTextAndImageToAction(importFilesAction, NotepadAction.IMPORT_FILES);
+
+		importDirectoryAction = new Action() {
+			@Override
+			public void run() {
+				importDirectory();
+			}
+		};
+		setTextAndImageToAction(importDirectoryAction, NotepadAction.IMPORT_DIRECTORY);
+
 		preferencesAction = new Action() {
 			@Override
 			public void run() {
@@ -708,15 +1489,22 @@ public class NotepadView extends ViewPart implements IPreferenceChangeListener {
 	 */
 	private void swapNoteTabs(int swappedIndex) {
 		Note selectedNote = getSelectedNote();
-		Note swappedNote = getNote(swappedIndex);
+		// Swapped note may not have been created yet, in which case the control of the selected tab becomes null.
+		Note swappedNote = getNoteTab(tabFolder.getItem(swappedIndex)).getNote();
 		tabFolder.getItem(swappedIndex).setControl(selectedNote);
 		tabFolder.getSelection().setControl(swappedNote);
 
-		String selectedTitle = tabFolder.getSelection().getText();
-		String swappedTitle = tabFolder.getItem(swappedIndex).getText();
-		tabFolder.getItem(swappedIndex).setText(selectedTitle);
-		tabFolder.getSelection().setText(swappedTitle);
+		CTabItem selectedTab = tabFolder.getSelection();
+		CTabItem swappedTab = tabFolder.getItem(swappedIndex);
+		Object selectedNoteTab = selectedTab.getData();
+		selectedTab.setData(swappedTab.getData());
+		swappedTab.setData(selectedNoteTab);
+		markTabsModified();
 
+		// The previously selected note now belongs to the swapped tab, which becomes selected.
+		renderTitle(selectedTab);
+		renderTitle(swappedTab);
 		tabFolder.setSelection(swappedIndex);
+		updateLockSymbols(swappedTab);
 	}
 }
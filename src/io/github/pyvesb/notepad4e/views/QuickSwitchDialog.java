@@ -0,0 +1,136 @@
+package io.github.pyvesb.notepad4e.views;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jface.dialogs.Dialog;
+import org.eclipse.jface.dialogs.IDialogConstants;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableItem;
+import org.eclipse.swt.widgets.Text;
+
+import io.github.pyvesb.notepad4e.strings.LocalStrings;
+
+/**
+ * Dialog used to switch to a note by typing part of its title. Matching notes are refreshed as the user types; the
+ * table is virtual, so that only the rows that are actually displayed are created, even when all notes are listed.
+ *
+ * @author Pyves
+ *
+ */
+class QuickSwitchDialog extends Dialog {
+
+	private static final int RESULTS_WIDTH = 400;
+	private static final int RESULTS_HEIGHT = 250;
+
+	private final NotepadView notepadView;
+
+	private Text queryText;
+	private Table resultTable;
+	// IDs of the notes currently displayed in the table.
+	private List<String> results = Collections.emptyList();
+	// Note to switch to once the dialog is closed, null if none.
+	private String selectedId;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param parentShell
+	 * @param notepadView view containing the notes
+	 */
+	QuickSwitchDialog(Shell parentShell, NotepadView notepadView) {
+		super(parentShell);
+		this.notepadView = notepadView;
+	}
+
+	String getSelectedId() {
+		return selectedId;
+	}
+
+	@Override
+	protected void configureShell(Shell shell) {
+		super.configureShell(shell);
+		shell.setText(LocalStrings.dialogQuickSwitchTitle);
+	}
+
+	@Override
+	protected boolean isResizable() {
+		return true;
+	}
+
+	@Override
+	protected Control createDialogArea(Composite parent) {
+		Composite area = (Composite) super.createDialogArea(parent);
+
+		Label label = new Label(area, SWT.NONE);
+		label.setText(LocalStrings.dialogQuickSwitchMsg);
+
+		queryText = new Text(area, SWT.SINGLE | SWT.BORDER | SWT.SEARCH);
+		queryText.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+		queryText.addModifyListener(event -> updateResults());
+		// Allow to move through the results without leaving the query field.
+		queryText.addListener(SWT.KeyDown, event -> {
+			if (event.keyCode == SWT.ARROW_DOWN || event.keyCode == SWT.ARROW_UP) {
+				int selectionIndex = resultTable.getSelectionIndex() + (event.keyCode == SWT.ARROW_DOWN ? 1 : -1);
+				if (selectionIndex >= 0 && selectionIndex < results.size()) {
+					resultTable.setSelection(selectionIndex);
+				}
+				event.doit = false;
+			}
+		});
+
+		resultTable = new Table(area, SWT.SINGLE | SWT.BORDER | SWT.V_SCROLL | SWT.FULL_SELECTION | SWT.VIRTUAL);
+		GridData resultLayoutData = new GridData(SWT.FILL, SWT.FILL, true, true);
+		resultLayoutData.widthHint = RESULTS_WIDTH;
+		resultLayoutData.heightHint = RESULTS_HEIGHT;
+		resultTable.setLayoutData(resultLayoutData);
+		// Rows are only filled in when they become visible.
+		resultTable.addListener(SWT.SetData, event -> {
+			((TableItem) event.item).setText(notepadView.getNoteTitle(results.get(event.index)));
+		});
+		resultTable.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetDefaultSelected(SelectionEvent event) {
+				okPressed();
+			}
+		});
+		return area;
+	}
+
+	@Override
+	protected void createButtonsForButtonBar(Composite parent) {
+		super.createButtonsForButtonBar(parent);
+		// List all the notes until the user types a query.
+		updateResults();
+	}
+
+	@Override
+	protected void okPressed() {
+		int selectionIndex = resultTable.getSelectionIndex();
+		if (selectionIndex >= 0) {
+			selectedId = results.get(selectionIndex);
+		}
+		super.okPressed();
+	}
+
+	/**
+	 * Finds the notes matching the current query and displays them.
+	 */
+	private void updateResults() {
+		results = notepadView.findNotes(queryText.getText());
+		resultTable.clearAll();
+		resultTable.setItemCount(results.size());
+		if (!results.isEmpty()) {
+			resultTable.setSelection(0);
+		}
+		getButton(IDialogConstants.OK_ID).setEnabled(!results.isEmpty());
+	}
+}
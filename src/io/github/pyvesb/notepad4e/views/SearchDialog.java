@@ -0,0 +1,153 @@
+package io.github.pyvesb.notepad4e.views;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jface.dialogs.Dialog;
+import org.eclipse.jface.dialogs.IDialogConstants;
+import org.eclipse.osgi.util.NLS;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableItem;
+import org.eclipse.swt.widgets.Text;
+
+import io.github.pyvesb.notepad4e.strings.LocalStrings;
+import io.github.pyvesb.notepad4e.utils.SearchIndex.Result;
+
+/**
+ * Dialog used to search for words across all notes. Results are refreshed as the user types and the selected result
+ * is opened when the dialog is closed with the OK button or by double-clicking on a result.
+ *
+ * @author Pyves
+ *
+ */
+class SearchDialog extends Dialog {
+
+	private static final int RESULTS_WIDTH = 400;
+	private static final int RESULTS_HEIGHT = 250;
+
+	private final NotepadView notepadView;
+
+	private Text queryText;
+	private Table resultTable;
+	// Results currently displayed in the table.
+	private List<Result> results = Collections.emptyList();
+	// Result to open once the dialog is closed, null if none.
+	private Result selectedResult;
+	private String query;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param parentShell
+	 * @param notepadView view in which to search
+	 */
+	SearchDialog(Shell parentShell, NotepadView notepadView) {
+		super(parentShell);
+		this.notepadView = notepadView;
+	}
+
+	Result getSelectedResult() {
+		return selectedResult;
+	}
+
+	String getQuery() {
+		return query;
+	}
+
+	@Override
+	protected void configureShell(Shell shell) {
+		super.configureShell(shell);
+		shell.setText(LocalStrings.dialogSearchTitle);
+	}
+
+	@Override
+	protected boolean isResizable() {
+		return true;
+	}
+
+	@Override
+	protected Control createDialogArea(Composite parent) {
+		Composite area = (Composite) super.createDialogArea(parent);
+
+		Label label = new Label(area, SWT.NONE);
+		label.setText(LocalStrings.dialogSearchMsg);
+
+		queryText = new Text(area, SWT.SINGLE | SWT.BORDER | SWT.SEARCH);
+		queryText.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false));
+		queryText.addModifyListener(event -> updateResults());
+
+		resultTable = new Table(area, SWT.SINGLE | SWT.BORDER | SWT.V_SCROLL | SWT.FULL_SELECTION);
+		GridData resultLayoutData = new GridData(SWT.FILL, SWT.FILL, true, true);
+		resultLayoutData.widthHint = RESULTS_WIDTH;
+		resultLayoutData.heightHint = RESULTS_HEIGHT;
+		resultTable.setLayoutData(resultLayoutData);
+		resultTable.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetDefaultSelected(SelectionEvent event) {
+				okPressed();
+			}
+		});
+		return area;
+	}
+
+	@Override
+	protected void createButtonsForButtonBar(Composite parent) {
+		super.createButtonsForButtonBar(parent);
+		// Nothing to open until results are found.
+		getButton(IDialogConstants.OK_ID).setEnabled(false);
+	}
+
+	@Override
+	protected void okPressed() {
+		int selectionIndex = resultTable.getSelectionIndex();
+		if (selectionIndex >= 0) {
+			selectedResult = results.get(selectionIndex);
+			query = queryText.getText();
+		}
+		super.okPressed();
+	}
+
+	/**
+	 * Searches the notes again with the current query, for instance once more notes were indexed. The selected result
+	 * remains selected if it still matches.
+	 */
+	void refreshResults() {
+		if (resultTable == null || resultTable.isDisposed()) {
+			return;
+		}
+		int selectionIndex = resultTable.getSelectionIndex();
+		String selectedId = selectionIndex >= 0 ? results.get(selectionIndex).getId() : null;
+		updateResults();
+		for (int resultIndex = 0; resultIndex < results.size(); ++resultIndex) {
+			if (results.get(resultIndex).getId().equals(selectedId)) {
+				resultTable.setSelection(resultIndex);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Searches the notes with the current query and displays the results.
+	 */
+	private void updateResults() {
+		results = notepadView.search(queryText.getText());
+		resultTable.removeAll();
+		for (Result result : results) {
+			TableItem item = new TableItem(resultTable, SWT.NONE);
+			item.setText(NLS.bind(LocalStrings.dialogSearchResult, notepadView.getNoteTitle(result.getId()),
+					result.getOccurrences()));
+		}
+		if (!results.isEmpty()) {
+			resultTable.setSelection(0);
+		}
+		getButton(IDialogConstants.OK_ID).setEnabled(!results.isEmpty());
+	}
+}